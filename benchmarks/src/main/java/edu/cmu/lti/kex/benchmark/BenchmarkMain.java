@@ -0,0 +1,21 @@
+package edu.cmu.lti.kex.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of benchmarks.jar. Accepts the usual JMH command line (e.g. a benchmark name pattern,
+ * -rf json -rff result.json to keep results for comparison) and always adds the GC profiler, so every
+ * result carries its allocation rate (gc.alloc.rate.norm is bytes allocated per operation).
+ * 
+ * @author xuke
+ *
+ */
+public class BenchmarkMain {
+  public static void main(String [] args) throws Exception{
+    CommandLineOptions cmd = new CommandLineOptions(args);
+    new Runner(new OptionsBuilder().parent(cmd).addProfiler(GCProfiler.class).build()).run();
+  }
+}
@@ -0,0 +1,97 @@
+package edu.cmu.lti.kex.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.collection.CasConsumer;
+import org.apache.uima.collection.CasConsumerDescription;
+import org.apache.uima.resource.ResourceSpecifier;
+import org.apache.uima.util.XMLInputSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of GeneNameConsumer.processCas() on a CAS already annotated by the Gene Name Annotator, both
+ * created from the descriptors shipped with hw1-kex. Each iteration writes to a fresh consumer and
+ * output file, so the file does not keep growing over the run.
+ * 
+ * @author xuke
+ *
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ConsumerBenchmark {
+  @Param({ Corpus.SYNTHETIC, Corpus.SAMPLE })
+  public String corpus;
+  
+  @Param({ "1000" })
+  public int lines;
+  
+  private AnalysisEngine annotator;
+  private CasConsumer consumer;
+  private CAS cas;
+  private File output;
+  
+  @Setup
+  public void setUp() throws Exception{
+    System.setProperty("kex.dictionary.snapshot", Snapshots.get().getPath());
+    annotator = UIMAFramework.produceAnalysisEngine(parse("/NerAnnotator.xml"));
+    cas = annotator.newCAS();
+    cas.setDocumentText(Corpus.document(Corpus.lines(corpus, lines)));
+    annotator.process(cas);
+  }
+  
+  @Setup(Level.Iteration)
+  public void openConsumer() throws Exception{
+    output = File.createTempFile("hw1-kex-benchmark", ".out");
+    CasConsumerDescription desc = (CasConsumerDescription) parse("/GeneNameConsumer.xml");
+    desc.getCasConsumerMetaData().getConfigurationParameterSettings()
+            .setParameterValue("outputFile", output.getPath());
+    consumer = UIMAFramework.produceCasConsumer(desc);
+  }
+  
+  @TearDown(Level.Iteration)
+  public void closeConsumer() throws Exception{
+    consumer.collectionProcessComplete(null);
+    consumer.destroy();
+    output.delete();
+  }
+  
+  @TearDown
+  public void tearDown() throws Exception{
+    annotator.destroy();
+  }
+  
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public CAS processCas() throws Exception{
+    consumer.processCas(cas);
+    return cas;
+  }
+  
+  private static ResourceSpecifier parse(String descriptor) throws Exception{
+    URL url = ConsumerBenchmark.class.getResource(descriptor);
+    if(url == null)
+      throw new IOException("Missing descriptor " + descriptor);
+    return UIMAFramework.getXMLParser().parseResourceSpecifier(new XMLInputSource(url));
+  }
+}
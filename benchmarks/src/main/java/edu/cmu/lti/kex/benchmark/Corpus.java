@@ -0,0 +1,121 @@
+package edu.cmu.lti.kex.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Input corpora of the benchmarks, in the input format of the CPE (a sentence ID, a space and the
+ * sentence on every line). The synthetic corpus is generated from a fixed seed, so every run and
+ * every build measures the same text.
+ * 
+ * @author xuke
+ *
+ */
+final class Corpus {
+  static final String SYNTHETIC = "synthetic";
+  static final String SAMPLE = "sample";
+  
+  private static final String SAMPLE_RESOURCE = "/corpus/sample.in";
+  private static final long SEED = 11791;
+  
+  private static final String [] COMMON = { "the", "of", "and", "in", "to", "a", "was", "were", "is", 
+    "that", "with", "by", "for", "cells", "expression", "patients", "levels", "activity", "binding", 
+    "increased", "observed", "analysis", "results", "suggest", "induced", "role", "human", "cell", 
+    "mice", "treatment", "response", "function", "during", "study", "these", "data", "using" };
+  private static final String [] GENE_LIKE = { "protein", "kinase", "receptor", "factor", "p53", 
+    "insulin", "interleukin", "alpha", "beta", "transcription", "domain", "gene" };
+  private static final String [] PUNCTUATION = { ",", ".", "(", ")", ";", "-" };
+  
+  private Corpus(){
+  }
+  
+  /**
+   * @return the lines of the named corpus, SYNTHETIC or SAMPLE.
+   */
+  static List<String> lines(String name, int count){
+    if(SAMPLE.equals(name))
+      return sample();
+    if(SYNTHETIC.equals(name))
+      return synthetic(count);
+    throw new IllegalArgumentException("Unknown corpus " + name);
+  }
+  
+  /**
+   * @return count generated lines mixing common words, gene-like words, upper case acronyms,
+   * numbers and punctuation.
+   */
+  static List<String> synthetic(int count){
+    Random random = new Random(SEED);
+    List<String> lines = new ArrayList<String>(count);
+    for(int n = 0; n < count; n++){
+      StringBuilder line = new StringBuilder();
+      line.append(String.format("P%08dT%04d", random.nextInt(100000000), n % 10000));
+      int words = 8 + random.nextInt(30);
+      for(int w = 0; w < words; w++){
+        line.append(' ');
+        int kind = random.nextInt(20);
+        if(kind < 12)
+          line.append(COMMON[random.nextInt(COMMON.length)]);
+        else if(kind < 15)
+          line.append(GENE_LIKE[random.nextInt(GENE_LIKE.length)]);
+        else if(kind < 17)
+          line.append(acronym(random));
+        else if(kind < 18)
+          line.append(random.nextInt(1000));
+        else
+          line.append(PUNCTUATION[random.nextInt(PUNCTUATION.length)]);
+      }
+      line.append(" .");
+      lines.add(line.toString());
+    }
+    return lines;
+  }
+  
+  /**
+   * @return the lines of the sample corpus shipped with the benchmarks.
+   */
+  static List<String> sample(){
+    InputStream stream = Corpus.class.getResourceAsStream(SAMPLE_RESOURCE);
+    if(stream == null)
+      throw new IllegalStateException("Missing " + SAMPLE_RESOURCE);
+    try{
+      BufferedReader reader = new BufferedReader(new InputStreamReader(stream, "UTF-8"));
+      List<String> lines = new ArrayList<String>();
+      String line;
+      while((line = reader.readLine()) != null){
+        if(line.trim().length() > 0)
+          lines.add(line);
+      }
+      reader.close();
+      return lines;
+    }
+    catch(IOException e){
+      throw new IllegalStateException(e);
+    }
+  }
+  
+  /**
+   * @return lines joined into one document, as the collection reader hands it to the annotator.
+   */
+  static String document(List<String> lines){
+    StringBuilder doc = new StringBuilder();
+    for(String line : lines)
+      doc.append(line).append('\n');
+    return doc.toString();
+  }
+  
+  private static String acronym(Random random){
+    int len = 2 + random.nextInt(4);
+    StringBuilder acronym = new StringBuilder();
+    for(int k = 0; k < len; k++)
+      acronym.append((char) ('A' + random.nextInt(26)));
+    if(random.nextBoolean())
+      acronym.append(1 + random.nextInt(9));
+    return acronym.toString();
+  }
+}
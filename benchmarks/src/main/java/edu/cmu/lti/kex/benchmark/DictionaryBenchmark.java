@@ -0,0 +1,62 @@
+package edu.cmu.lti.kex.benchmark;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of loading the dictionaries: compiling them from the text word lists (what every cold start
+ * paid before the snapshot existed), mapping a compiled snapshot, and initializing a recognizer from
+ * a compiled snapshot, which loads it anew each time (fingerprint check and mapping) as a cold start
+ * does.
+ * 
+ * @author xuke
+ *
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+public class DictionaryBenchmark {
+  private File snapshot;
+  
+  @Setup
+  public void setUp(){
+    snapshot = Snapshots.get();
+  }
+  
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Warmup(iterations = 1)
+  @Measurement(iterations = 5)
+  public byte [] compileDictionaries(){
+    return Kex.compileDictionaries();
+  }
+  
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  @Warmup(iterations = 5, time = 1)
+  @Measurement(iterations = 5, time = 1)
+  public Object mapSnapshot(){
+    return Kex.mapSnapshot(snapshot);
+  }
+  
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Warmup(iterations = 1)
+  @Measurement(iterations = 5)
+  public Object initializeRecognizer(){
+    return Kex.newRecognizer(snapshot);
+  }
+}
@@ -0,0 +1,139 @@
+package edu.cmu.lti.kex.benchmark;
+
+import java.io.File;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Access to the classes of hw1-kex. They live in the default package, which cannot be imported from a
+ * named one (and JMH refuses benchmarks in the default package), so they are reached by reflection.
+ * The methods are looked up once; the cost of an invocation is negligible next to the measured work.
+ * 
+ * @author xuke
+ *
+ */
+final class Kex {
+  private static final Class<?> RECOGNIZER = type("EntityRecognizer");
+  private static final Class<?> COMPILER = type("DictionaryCompiler");
+  private static final Class<?> SNAPSHOT = type("DictionarySnapshot");
+  private static final Class<?> POS_TAGGER = type("PosTagger");
+  
+  private static final Method INITIALIZE = method(RECOGNIZER, "initialize", SNAPSHOT);
+  private static final Method RECOGNIZE = method(RECOGNIZER, "recognizeEntities", String.class);
+  private static final Method COMPILE = method(COMPILER, "compile", long.class);
+  private static final Method FINGERPRINT = method(COMPILER, "fingerprint");
+  private static final Method WRITE = method(COMPILER, "write", byte[].class, File.class);
+  private static final Method MAP = method(SNAPSHOT, "map", File.class);
+  private static final Method LOAD = method(SNAPSHOT, "load", File.class);
+  private static final Method RECOGNIZE_POS = method(POS_TAGGER, "recognizePos", List.class);
+  
+  private Kex(){
+  }
+  
+  /**
+   * a new EntityRecognizer whose dictionaries are mapped from snapshot by DictionarySnapshot.load(),
+   * fingerprint check included. EntityRecognizer.initialize(File) is not used: it goes through the
+   * snapshots DictionaryResource_impl keeps per JVM, so every call after the first would only measure
+   * a map lookup.
+   */
+  static Object newRecognizer(File snapshot){
+    Object recognizer = newInstance(RECOGNIZER);
+    invoke(INITIALIZE, recognizer, invoke(LOAD, null, snapshot));
+    return recognizer;
+  }
+  
+  /**
+   * EntityRecognizer.recognizeEntities(String) of recognizer.
+   */
+  static List<?> recognize(Object recognizer, String text){
+    return (List<?>) invoke(RECOGNIZE, recognizer, text);
+  }
+  
+  /**
+   * compile the dictionaries of the classpath into the content of a snapshot file.
+   */
+  static byte [] compileDictionaries(){
+    Object compiler = newInstance(COMPILER);
+    return (byte []) invoke(COMPILE, compiler, invoke(FINGERPRINT, null));
+  }
+  
+  static void writeSnapshot(byte [] data, File file){
+    invoke(WRITE, null, data, file);
+  }
+  
+  /**
+   * memory-map a snapshot file, returning the DictionarySnapshot.
+   */
+  static Object mapSnapshot(File file){
+    return invoke(MAP, null, file);
+  }
+  
+  static Object newPosTagger(){
+    return newInstance(POS_TAGGER);
+  }
+  
+  /**
+   * PosTagger.recognizePos(List<CoreLabel>) of tagger.
+   */
+  static Map<?, ?> recognizePos(Object tagger, List<?> tokens){
+    return (Map<?, ?>) invoke(RECOGNIZE_POS, tagger, tokens);
+  }
+  
+  private static Class<?> type(String name){
+    try{
+      return Class.forName(name);
+    }
+    catch(ClassNotFoundException e){
+      throw new IllegalStateException("hw1-kex is not on the classpath", e);
+    }
+  }
+  
+  private static Method method(Class<?> type, String name, Class<?>... args){
+    try{
+      Method m = type.getDeclaredMethod(name, args);
+      m.setAccessible(true);
+      return m;
+    }
+    catch(NoSuchMethodException e){
+      throw new IllegalStateException(e);
+    }
+  }
+  
+  private static Object newInstance(Class<?> type){
+    try{
+      Constructor<?> c = type.getDeclaredConstructor();
+      c.setAccessible(true);
+      return c.newInstance();
+    }
+    catch(InvocationTargetException e){
+      throw rethrow(e);
+    }
+    catch(Exception e){
+      throw new IllegalStateException(e);
+    }
+  }
+  
+  private static Object invoke(Method m, Object target, Object... args){
+    try{
+      return m.invoke(target, args);
+    }
+    catch(InvocationTargetException e){
+      throw rethrow(e);
+    }
+    catch(IllegalAccessException e){
+      throw new IllegalStateException(e);
+    }
+  }
+  
+  private static RuntimeException rethrow(InvocationTargetException e){
+    Throwable cause = e.getCause();
+    if(cause instanceof RuntimeException)
+      return (RuntimeException) cause;
+    if(cause instanceof Error)
+      throw (Error) cause;
+    return new IllegalStateException(cause);
+  }
+}
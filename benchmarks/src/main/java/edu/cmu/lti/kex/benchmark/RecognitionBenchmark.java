@@ -0,0 +1,96 @@
+package edu.cmu.lti.kex.benchmark;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.process.CoreLabelTokenFactory;
+import edu.stanford.nlp.process.PTBTokenizer;
+
+/**
+ * Recognition throughput and latency: single lines through EntityRecognizer (what parseLine costs
+ * per line), whole documents (reported as latency percentiles) and the POS tagger alone.
+ * 
+ * @author xuke
+ *
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RecognitionBenchmark {
+  @Param({ Corpus.SYNTHETIC, Corpus.SAMPLE })
+  public String corpus;
+  
+  @Param({ "1000" })
+  public int lines;
+  
+  private Object recognizer;
+  private Object posTagger;
+  private List<String> corpusLines;
+  private String document;
+  private List<List<CoreLabel>> tokens;
+  
+  @Setup
+  public void setUp(){
+    recognizer = Kex.newRecognizer(Snapshots.get());
+    posTagger = Kex.newPosTagger();
+    corpusLines = Corpus.lines(corpus, lines);
+    document = Corpus.document(corpusLines);
+    
+    tokens = new ArrayList<List<CoreLabel>>();
+    for(String line : corpusLines)
+      tokens.add(PTBTokenizer.factory(new CoreLabelTokenFactory(), "")
+              .getTokenizer(new StringReader(line)).tokenize());
+  }
+  
+  /**
+   * the position of each benchmark thread in the corpus, so that successive calls see different lines.
+   */
+  @State(Scope.Thread)
+  public static class Cursor {
+    int next;
+    
+    int next(int size){
+      int n = next;
+      next = (next + 1) % size;
+      return n;
+    }
+  }
+  
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  public List<?> recognizeLine(Cursor cursor){
+    return Kex.recognize(recognizer, corpusLines.get(cursor.next(corpusLines.size())));
+  }
+  
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public List<?> recognizeDocument(){
+    return Kex.recognize(recognizer, document);
+  }
+  
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  public Map<?, ?> tagLine(Cursor cursor){
+    return Kex.recognizePos(posTagger, tokens.get(cursor.next(tokens.size())));
+  }
+}
@@ -0,0 +1,33 @@
+package edu.cmu.lti.kex.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The dictionary snapshot shared by the benchmarks of one JVM, compiled on first use into a temporary
+ * file so that recognition benchmarks never include dictionary compilation.
+ * 
+ * @author xuke
+ *
+ */
+final class Snapshots {
+  private static File snapshot;
+  
+  private Snapshots(){
+  }
+  
+  static synchronized File get(){
+    if(snapshot == null){
+      try{
+        File file = File.createTempFile("hw1-kex-benchmark", ".snapshot");
+        file.deleteOnExit();
+        Kex.writeSnapshot(Kex.compileDictionaries(), file);
+        snapshot = file;
+      }
+      catch(IOException e){
+        throw new IllegalStateException(e);
+      }
+    }
+    return snapshot;
+  }
+}
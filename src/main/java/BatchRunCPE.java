@@ -0,0 +1,236 @@
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.CASException;
+import org.apache.uima.collection.CollectionProcessingEngine;
+import org.apache.uima.collection.EntityProcessStatus;
+import org.apache.uima.collection.StatusCallbackListener;
+import org.apache.uima.collection.metadata.CpeCasProcessors;
+import org.apache.uima.collection.metadata.CpeDescription;
+import org.apache.uima.util.XMLInputSource;
+
+/**
+ * The BatchRunCPE class runs a CPE descriptor headless, for batch schedulers: it does not read stdin,
+ * returns from main() once the collection is processed (exiting with status 1 only if the CPE aborted
+ * or a document failed), and ends with the throughput of the run.
+ *
+ * The number of processing unit threads and the CAS pool size of the descriptor are replaced, either by
+ * the values given on the command line or by values derived from the machine: one thread per core
+ * beyond the one reading the collection, limited by how many threads fit in the maximum heap, and two
+ * more CASes than threads so that the reader can fill a CAS while every thread is busy. The POS models
+ * loaded by the recognizer are bounded by the same number of threads.
+ *
+ * Usage: BatchRunCPE [descriptor] [-threads n] [-casPool n] [-heapPerThreadMB n]
+ *
+ * @author xuke
+ *
+ */
+public class BatchRunCPE {
+  public static final String DEFAULT_DESCRIPTOR = "src/main/resources/CpeDescriptor.xml";
+  /* heap assumed to be needed by each processing thread: its CASes and the working set of the tagger */
+  public static final int DEFAULT_HEAP_PER_THREAD_MB = 256;
+
+  private String descriptor = DEFAULT_DESCRIPTOR;
+  private int threads = 0;
+  private int casPool = 0;
+  private int heapPerThreadMB = DEFAULT_HEAP_PER_THREAD_MB;
+
+  private final CountDownLatch done = new CountDownLatch(1);
+  private volatile boolean aborted = false;
+  private long documents = 0;
+  private long characters = 0;
+  private long entities = 0;
+  private long failures = 0;
+  private long startTime;
+  private volatile long initCompleteTime;
+
+  /**
+   * @return false if the arguments are invalid.
+   */
+  boolean parseArguments(String [] args){
+    for(int k = 0; k < args.length; k++){
+      String arg = args[k];
+      if(!arg.startsWith("-")){
+        descriptor = arg;
+        continue;
+      }
+      if(k + 1 >= args.length)
+        return false;
+
+      int value;
+      try{
+        value = Integer.parseInt(args[++k]);
+      }
+      catch(NumberFormatException e){
+        return false;
+      }
+      if(value < 0)
+        return false;
+
+      if(arg.equals("-threads"))
+        threads = value;
+      else if(arg.equals("-casPool"))
+        casPool = value;
+      else if(arg.equals("-heapPerThreadMB"))
+        // DEFAULT_HEAP_PER_THREAD_MB (256) is a rough guess, not a measurement: a few CASes of a
+        // document each and the working set of a POS tagger. Lower it for small documents and a
+        // mostly lazy tagger, raise it for large segments; 0 sizes threads to the cores alone.
+        heapPerThreadMB = value;
+      else
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * threads to run when none are given: a core is left to the collection reader, and no more threads
+   * than the maximum heap holds at heapPerThreadMB each.
+   */
+  static int autoThreads(int cores, long maxHeap, int heapPerThreadMB){
+    int threads = Math.max(1, cores - 1);
+    if(heapPerThreadMB > 0 && maxHeap != Long.MAX_VALUE){
+      long fit = maxHeap / ((long) heapPerThreadMB << 20);
+      threads = (int) Math.max(1, Math.min(threads, fit));
+    }
+    return threads;
+  }
+
+  /**
+   * CASes in the pool of a run with threads processing threads: casPool if given (not 0), otherwise
+   * two more than threads so that the reader can fill a CAS while every thread is busy, and never
+   * fewer than threads, since a thread without a CAS of its own would only wait.
+   */
+  static int casPoolSize(int threads, int casPool){
+    if(casPool == 0)
+      casPool = threads + 2;
+    return Math.max(casPool, threads);
+  }
+
+  /**
+   * run the CPE to completion.
+   * @return true if the whole collection was processed without errors.
+   */
+  public boolean run() throws Exception{
+    startTime = System.currentTimeMillis();
+
+    CpeDescription cpeDesc = UIMAFramework.getXMLParser().parseCpeDescription(
+            new XMLInputSource(descriptor));
+
+    Runtime runtime = Runtime.getRuntime();
+    if(threads == 0)
+      threads = autoThreads(runtime.availableProcessors(), runtime.maxMemory(), heapPerThreadMB);
+    casPool = casPoolSize(threads, casPool);
+
+    CpeCasProcessors processors = cpeDesc.getCpeCasProcessors();
+    processors.setConcurrentPUCount(threads);
+    processors.setPoolSize(casPool);
+    // a thread tags one line at a time, so more models than threads would never be used
+    EntityRecognizer.setMaxPosTaggers(threads);
+    System.out.println("Running " + descriptor + " with " + threads + " processing threads and "
+            + casPool + " CASes");
+
+    CollectionProcessingEngine cpe = UIMAFramework.produceCollectionProcessingEngine(cpeDesc);
+    Listener listener = new Listener();
+    cpe.addStatusCallbackListener(listener);
+    cpe.process();
+    done.await();
+
+    long time = System.currentTimeMillis();
+    if(initCompleteTime == 0)
+      initCompleteTime = time;
+    synchronized(listener){
+      report(time);
+    }
+    return !aborted && failures == 0;
+  }
+
+  /*
+   * print the counts and throughput of a run which ended at time.
+   */
+  private void report(long time){
+    long initTime = initCompleteTime - startTime;
+    long processingTime = Math.max(1, time - initCompleteTime);
+    System.out.println("Completed " + documents + " documents; " + characters + " characters; "
+            + entities + " entities; " + failures + " failed");
+    System.out.println("Initialization Time: " + initTime + " ms");
+    System.out.println("Processing Time: " + processingTime + " ms");
+    System.out.println(String.format("Throughput: %.1f docs/sec, %.0f chars/sec, %.1f entities/sec",
+            documents * 1000.0 / processingTime, characters * 1000.0 / processingTime,
+            entities * 1000.0 / processingTime));
+  }
+
+  private static void printUsageMessage(){
+    System.out.println(" Arguments to the program are as follows : \n"
+            + "[descriptor] : path to CPE descriptor file, " + DEFAULT_DESCRIPTOR + " by default\n"
+            + "-threads n : processing unit threads, 0 (the default) sizes them to the cores and heap\n"
+            + "-casPool n : CASes in the pool, 0 (the default) means threads + 2\n"
+            + "-heapPerThreadMB n : heap assumed per thread when sizing threads, "
+            + DEFAULT_HEAP_PER_THREAD_MB + " by default");
+  }
+
+  public static void main(String [] args) throws Exception{
+    BatchRunCPE runner = new BatchRunCPE();
+    if(!runner.parseArguments(args)){
+      printUsageMessage();
+      System.exit(2);
+    }
+
+    // the CPM threads are done once the latch is released, so a successful run simply returns
+    if(!runner.run())
+      System.exit(1);
+  }
+
+  /*
+   * counts documents, characters and entities, and releases run() when the CPE stops.
+   */
+  class Listener implements StatusCallbackListener {
+    public void initializationComplete() {
+      initCompleteTime = System.currentTimeMillis();
+    }
+
+    public void batchProcessComplete() {
+    }
+
+    public void collectionProcessComplete() {
+      done.countDown();
+    }
+
+    public void paused() {
+    }
+
+    public void resumed() {
+    }
+
+    public void aborted() {
+      System.out.println("Aborted");
+      aborted = true;
+      done.countDown();
+    }
+
+    /*
+     * called by the processing threads, hence synchronized.
+     */
+    public synchronized void entityProcessComplete(CAS aCas, EntityProcessStatus aStatus) {
+      if (aStatus.isException()) {
+        List<Exception> exceptions = aStatus.getExceptions();
+        for (int i = 0; i < exceptions.size(); i++)
+          ((Throwable) exceptions.get(i)).printStackTrace();
+        failures++;
+        return;
+      }
+
+      documents++;
+      String docText = aCas.getDocumentText();
+      if (docText != null)
+        characters += docText.length();
+      try{
+        entities += aCas.getJCas().getAnnotationIndex(GeneNameEntity.type).size();
+      }
+      catch(CASException e){
+        // not a JCas, so there are no GeneNameEntity annotations to count
+      }
+    }
+  }
+}
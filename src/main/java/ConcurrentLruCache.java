@@ -0,0 +1,142 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache shared by concurrent threads. Keys are spread over a fixed number of segments, each
+ * an access-ordered LinkedHashMap guarded by its own lock that evicts its least recently used entry when
+ * full, so threads only contend when they hit the same segment. Hits, misses and evictions are counted.
+ * The capacity is split exactly between the segments, and a small cache uses fewer segments so that
+ * each of them holds at least one entry.
+ * 
+ * @author xuke
+ *
+ */
+public class ConcurrentLruCache<K, V> {
+  private static final int MAX_SEGMENTS = 16;
+  
+  private final Segment<K, V> [] segments;
+  private final int mask;
+  private final int capacity;
+  
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  
+  /**
+   * @param capacity maximum number of entries; 0 disables caching.
+   */
+  @SuppressWarnings("unchecked")
+  public ConcurrentLruCache(int capacity){
+    this.capacity = Math.max(0, capacity);
+    // a power of two, so that a segment is picked by masking the hash
+    int count = Integer.highestOneBit(Math.max(1, Math.min(MAX_SEGMENTS, this.capacity)));
+    mask = count - 1;
+    segments = new Segment[count];
+    for(int s = 0; s < count; s++)
+      segments[s] = new Segment<K, V>(this.capacity / count + (s < this.capacity % count ? 1 : 0), evictions);
+  }
+  
+  /**
+   * @return the cached value of key, or null (counted as a miss) if there is none.
+   */
+  public V get(K key){
+    if(capacity == 0){
+      misses.incrementAndGet();
+      return null;
+    }
+    
+    Segment<K, V> segment = segmentFor(key);
+    V value;
+    synchronized(segment){
+      value = segment.get(key);
+    }
+    if(value != null)
+      hits.incrementAndGet();
+    else
+      misses.incrementAndGet();
+    return value;
+  }
+  
+  /**
+   * cache value under key, evicting the least recently used entry of its segment if needed.
+   */
+  public void put(K key, V value){
+    if(capacity == 0 || value == null)
+      return;
+    
+    Segment<K, V> segment = segmentFor(key);
+    synchronized(segment){
+      segment.put(key, value);
+    }
+  }
+  
+  public int getCapacity(){
+    return capacity;
+  }
+  
+  public int size(){
+    int size = 0;
+    for(Segment<K, V> segment : segments){
+      synchronized(segment){
+        size += segment.size();
+      }
+    }
+    return size;
+  }
+  
+  public long getHits(){
+    return hits.get();
+  }
+  
+  public long getMisses(){
+    return misses.get();
+  }
+  
+  public long getEvictions(){
+    return evictions.get();
+  }
+  
+  /**
+   * @return hits / (hits + misses), or 0 before the first lookup.
+   */
+  public double getHitRate(){
+    long h = hits.get(), total = h + misses.get();
+    return total == 0 ? 0 : (double) h / total;
+  }
+  
+  public String toString(){
+    return String.format("%d/%d entries, %d hits, %d misses (%.1f%% hit rate), %d evictions", 
+            size(), capacity, getHits(), getMisses(), 100 * getHitRate(), getEvictions());
+  }
+  
+  private Segment<K, V> segmentFor(K key){
+    int h = key.hashCode();
+    h ^= (h >>> 16);
+    return segments[h & mask];
+  }
+  
+  /*
+   * one LRU segment; callers synchronize on it.
+   */
+  private static class Segment<K, V> extends LinkedHashMap<K, V> {
+    private static final long serialVersionUID = 1L;
+    
+    private final int capacity;
+    private final AtomicLong evictions;
+    
+    Segment(int capacity, AtomicLong evictions){
+      super(16, 0.75f, true);
+      this.capacity = capacity;
+      this.evictions = evictions;
+    }
+    
+    protected boolean removeEldestEntry(Map.Entry<K, V> eldest){
+      if(size() > capacity){
+        evictions.incrementAndGet();
+        return true;
+      }
+      return false;
+    }
+  }
+}
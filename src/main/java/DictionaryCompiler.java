@@ -0,0 +1,377 @@
+import java.io.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * The DictionaryCompiler class turns the text dictionaries into the binary snapshot read by
+ * DictionarySnapshot. It does the expensive part of the old EntityRecognizer.initialize() (scanning the
+ * word lists and stemming every token) once, either at build time through main() or on the first run
+ * when no up-to-date snapshot is found.
+ *
+ * @author xuke
+ *
+ */
+public class DictionaryCompiler {
+  /* classpath directory of the dictionary files */
+  static final String DICTIONARY_DIR = "/dictionary/";
+  /* dictionary files, which actually should be written into a resource file. */
+  static final String GENE_TERM_DIC = "gene_term_dictionary.txt";
+  static final String COMMON_WORDS = "common_words.txt";
+  static final String FULL_WORDS = "full_dictionary.txt";
+  static final String CORPUS = "gone_with_the_wind.txt";
+  private static final String [] SOURCES = { GENE_TERM_DIC, COMMON_WORDS, FULL_WORDS, CORPUS };
+  
+  private final String directory;
+
+  // stores known entities (from dictionaries) of 1-word length.
+  private Set<String> singleKnownEntities = new HashSet<String>();
+  // stores all kinds of known entities (from dictionaries)
+  private Set<String> allKnownEntities = new HashSet<String>();
+  // stores a full English word list which contains about 180,000 English words
+  private Set<String> fullDictionary = new HashSet<String>();
+  // stores 'common words' which refer to those unlikely to be gene names. e.g. those appear in fictions.
+  private Set<String> commonWords = new HashSet<String>();
+  // stores the lowercased words of every gene term made of more than one word
+  private List<String []> phrases = new ArrayList<String []>();
+  // words of the corpus and word lists repeat a lot, so each distinct word is stemmed once.
+  private StemCache stems = new StemCache();
+  
+  public DictionaryCompiler(){
+    this(DICTIONARY_DIR);
+  }
+  
+  /**
+   * @param directory classpath directory, ending with '/', holding the dictionary files, e.g. the small
+   * dictionaries of the tests.
+   */
+  DictionaryCompiler(String directory){
+    this.directory = directory;
+  }
+
+  /**
+   * load all dictionaries and encode them as a snapshot stamped with the given fingerprint.
+   * @param fingerprint value of fingerprint() for the dictionaries being compiled.
+   * @return the content of the snapshot file.
+   */
+  public byte [] compile(long fingerprint){
+    loadKnownEntities(directory + GENE_TERM_DIC);
+    loadDictionary(directory + FULL_WORDS);
+
+    loadForbiddenWords(directory + COMMON_WORDS);
+    loadForbiddenWords(directory + CORPUS);
+    loadForbiddenWords(directory + FULL_WORDS, allKnownEntities);
+
+    try{
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(DictionarySnapshot.MAGIC);
+      out.writeInt(DictionarySnapshot.VERSION);
+      out.writeLong(fingerprint);
+      out.writeInt(DictionarySnapshot.SECTION_COUNT);
+
+      // same order as the section indexes of DictionarySnapshot
+      writeSection(out, singleKnownEntities);
+      String [] words = writeSection(out, allKnownEntities);
+      writeSection(out, fullDictionary);
+      writeSection(out, commonWords);
+
+      writeTrie(out, words);
+
+      out.close();
+      return bytes.toByteArray();
+    }
+    catch(IOException e){
+      // never thrown by a ByteArrayOutputStream
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * a fingerprint of the contents of the source dictionaries (CRC32 and length of each resource), so
+   * that a snapshot compiled from other dictionaries is detected wherever they are packaged. Reading
+   * the files once is still far cheaper than compiling them.
+   */
+  public static long fingerprint(){
+    return fingerprint(DICTIONARY_DIR);
+  }
+  
+  static long fingerprint(String directory){
+    long hash = DictionarySnapshot.VERSION;
+    byte [] buffer = new byte[64 * 1024];
+    for(String source : SOURCES){
+      long length = -1, crc = 0;
+      InputStream in = DictionaryCompiler.class.getResourceAsStream(directory + source);
+      if(in != null){
+        try{
+          CRC32 checksum = new CRC32();
+          length = 0;
+          for(int n; (n = in.read(buffer)) > 0; length += n)
+            checksum.update(buffer, 0, n);
+          crc = checksum.getValue();
+        }
+        catch(IOException e){
+          // treat an unreadable resource as a missing one
+          length = -1;
+          crc = 0;
+        }
+        finally{
+          try{
+            in.close();
+          }
+          catch(IOException e){
+            // everything needed was read
+          }
+        }
+      }
+      hash = hash * 31 + source.hashCode();
+      hash = hash * 31 + length;
+      hash = hash * 31 + crc;
+    }
+    return hash;
+  }
+
+  /**
+   * write a compiled snapshot next to its final location and move it into place, so that readers never
+   * map a half-written file.
+   */
+  static void write(byte [] data, File file) throws IOException{
+    File dir = file.getAbsoluteFile().getParentFile();
+    if(dir != null && !dir.isDirectory() && !dir.mkdirs())
+      throw new IOException("Cannot create directory " + dir);
+
+    File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+    try{
+      OutputStream out = new FileOutputStream(tmp);
+      try{
+        out.write(data);
+      }
+      finally{
+        out.close();
+      }
+
+      if(!tmp.renameTo(file)){
+        file.delete();
+        if(!tmp.renameTo(file))
+          throw new IOException("Cannot move " + tmp + " to " + file);
+      }
+    }
+    finally{
+      tmp.delete();
+    }
+  }
+
+  /*
+   * sorted entries, the end offset of every entry, the characters padded to a multiple of 4 bytes and
+   * the hash slots.
+   */
+  private String [] writeSection(DataOutputStream out, Set<String> words) throws IOException{
+    words.remove(null);
+    String [] sorted = words.toArray(new String[words.size()]);
+    Arrays.sort(sorted);
+
+    out.writeInt(sorted.length);
+    int offset = 0;
+    out.writeInt(offset);
+    for(String w : sorted){
+      offset += w.length();
+      out.writeInt(offset);
+    }
+    for(String w : sorted)
+      out.writeChars(w);
+    if((offset & 1) == 1)
+      out.writeChar(0);
+
+    // hash slots, at most half full, holding entry index + 1
+    int capacity = 2;
+    while(capacity < 2 * sorted.length)
+      capacity <<= 1;
+    int [] slots = new int[capacity];
+    for(int k = 0; k < sorted.length; k++){
+      int slot = Lexicon.hash(sorted[k], 0, sorted[k].length(), false) & (capacity - 1);
+      while(slots[slot] != 0)
+        slot = (slot + 1) & (capacity - 1);
+      slots[slot] = k + 1;
+    }
+    out.writeInt(capacity);
+    for(int slot : slots)
+      out.writeInt(slot);
+
+    return sorted;
+  }
+
+  /*
+   * the trie of phrases, labelling edges with the position of each word in the sorted words table.
+   * Nodes are numbered breadth first, so the edges of a node are contiguous.
+   */
+  private void writeTrie(DataOutputStream out, String [] words) throws IOException{
+    List<TreeMap<Integer, Integer>> children = new ArrayList<TreeMap<Integer, Integer>>();
+    BitSet terminal = new BitSet();
+    children.add(new TreeMap<Integer, Integer>());
+
+    for(String [] phrase : phrases){
+      int node = PhraseTrie.ROOT;
+      for(String w : phrase){
+        int token = Arrays.binarySearch(words, w);
+        Integer next = children.get(node).get(token);
+        if(next == null){
+          next = children.size();
+          children.add(new TreeMap<Integer, Integer>());
+          children.get(node).put(token, next);
+        }
+        node = next;
+      }
+      terminal.set(node);
+    }
+
+    // renumber breadth first
+    int [] order = new int[children.size()];
+    int [] number = new int[children.size()];
+    int head = 0, tail = 0;
+    order[tail++] = PhraseTrie.ROOT;
+    while(head < tail){
+      int node = order[head++];
+      for(int child : children.get(node).values())
+        order[tail++] = child;
+    }
+    for(int n = 0; n < order.length; n++)
+      number[order[n]] = n;
+
+    int edges = 0;
+    for(TreeMap<Integer, Integer> c : children)
+      edges += c.size();
+
+    out.writeInt(order.length);
+    out.writeInt(edges);
+    int start = 0;
+    out.writeInt(start);
+    for(int node : order){
+      start += children.get(node).size();
+      out.writeInt(start);
+    }
+    for(int node : order)
+      for(int token : children.get(node).keySet())
+        out.writeInt(token);
+    for(int node : order)
+      for(int child : children.get(node).values())
+        out.writeInt(number[child]);
+    for(int w = 0; w < (order.length + 31) / 32; w++){
+      int bits = 0;
+      for(int b = 0; b < 32; b++){
+        int n = w * 32 + b;
+        if(n < order.length && terminal.get(order[n]))
+          bits |= 1 << b;
+      }
+      out.writeInt(bits);
+    }
+  }
+
+  /*
+   * load known names from a gene name dictionary
+   */
+  private void loadKnownEntities(String dic){
+    try{
+      BufferedReader reader = new BufferedReader(
+              new InputStreamReader(this.getClass().getResourceAsStream(dic))
+              );
+      String line = "";
+      while( ( line = reader.readLine() ) != null ){
+        String [] terms  = line.split(" ");
+        List<String> phrase = new ArrayList<String>();
+        for(String t : terms){
+          allKnownEntities.add(t.toLowerCase());
+          if(t.length() > 0)
+            phrase.add(t.toLowerCase());
+        }
+
+        singleKnownEntities.add(terms[0]);
+        if(phrase.size() > 1)
+          phrases.add(phrase.toArray(new String[phrase.size()]));
+      }
+
+      reader.close();
+    }
+    catch(Exception e){
+      System.out.println("No such file found!");
+    }
+  }
+
+  /*
+   * load English words from full words dictionary
+   */
+  private void loadDictionary(String dic){
+    StemCache mor = stems;
+
+    InputStream stream = this.getClass().getResourceAsStream(dic);
+    try{
+      Scanner sc = new Scanner(stream);
+      while(sc.hasNext()){
+        String line = sc.next();
+        fullDictionary.add(line);
+        fullDictionary.add(mor.stem(line));
+      }
+
+      stream.close();
+      sc.close();
+    }
+    catch(Exception e){
+      System.out.println("No such file found!");
+    }
+  }
+
+  /*
+   * load words that are unlikely to appear to be a gene name
+   */
+  private void loadForbiddenWords(String file){
+    try{
+      StemCache mor = stems;
+
+      InputStream stream = this.getClass().getResourceAsStream(file);
+      Scanner sc = new Scanner(stream);
+      while(sc.hasNext()){
+        String token = sc.next().trim();
+         commonWords.add(token);
+         commonWords.add(mor.stem(token));
+      }
+
+      stream.close();
+      sc.close();
+    }
+    catch(Exception e){
+      System.out.println("No such file found!");
+    }
+  }
+
+  /*
+   * load words that are unlikely to appear to be a gene name, except when the words are already in dic.
+   */
+  private void loadForbiddenWords(String file, Set<String> dic){
+    try{
+      InputStream stream = this.getClass().getResourceAsStream(file);
+      Scanner sc = new Scanner(stream);
+      while(sc.hasNext()){
+        String token = sc.next().trim();
+
+        if(!dic.contains(token))
+          commonWords.add(token);
+      }
+
+      stream.close();
+      sc.close();
+    }
+    catch(Exception e){
+      System.out.println("No such file found!");
+    }
+  }
+
+  /**
+   * compile the dictionaries into the snapshot file given as the first argument (or the default location).
+   * Called by the build so that the first run does not have to do it.
+   */
+  public static void main(String [] args) throws IOException{
+    File file = args.length > 0 ? new File(args[0]) : DictionarySnapshot.defaultLocation();
+    long start = System.currentTimeMillis();
+    write(new DictionaryCompiler().compile(fingerprint()), file);
+    System.out.println("Compiled dictionary snapshot " + file + " in "
+            + (System.currentTimeMillis() - start) + " ms");
+  }
+}
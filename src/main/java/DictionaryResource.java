@@ -0,0 +1,14 @@
+/**
+ * The 'shared resource' interface through which annotators obtain the gene name dictionaries.
+ * It is declared as an external resource dependency in NerAnnotator.xml and bound to
+ * DictionaryResource_impl, so every annotator instance of the CPE receives the same object.
+ * 
+ * @author xuke
+ *
+ */
+public interface DictionaryResource {
+  /**
+   * @return the immutable dictionaries, safe to be queried concurrently by any number of threads.
+   */
+  public DictionarySnapshot getDictionaries();
+}
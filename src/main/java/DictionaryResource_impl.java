@@ -0,0 +1,68 @@
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.uima.resource.DataResource;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.SharedResourceObject;
+
+/**
+ * implementation of DictionaryResource, loaded by the UIMA resource manager from the snapshot file
+ * named in the descriptor. Snapshots are additionally cached per JVM, so annotator replicas created
+ * through different resource managers still map each snapshot only once.
+ * 
+ * @author xuke
+ *
+ */
+public class DictionaryResource_impl implements DictionaryResource, SharedResourceObject {
+  private static final Map<File, DictionarySnapshot> loaded = new HashMap<File, DictionarySnapshot>();
+  
+  private DictionarySnapshot dictionaries;
+  
+  public void load(DataResource aData) throws ResourceInitializationException {
+    File file = toFile(aData.getUri());
+    if(file == null || !file.isFile())
+      file = DictionarySnapshot.defaultLocation();
+    
+    dictionaries = load(file);
+  }
+  
+  public DictionarySnapshot getDictionaries(){
+    return dictionaries;
+  }
+  
+  /*
+   * the snapshot of file, mapped at most once per JVM.
+   */
+  static DictionarySnapshot load(File file){
+    try{
+      file = file.getCanonicalFile();
+    }
+    catch(IOException e){
+      file = file.getAbsoluteFile();
+    }
+    
+    synchronized(loaded){
+      DictionarySnapshot dic = loaded.get(file);
+      if(dic == null){
+        dic = DictionarySnapshot.load(file);
+        loaded.put(file, dic);
+      }
+      return dic;
+    }
+  }
+  
+  private static File toFile(URI uri){
+    if(uri == null || !"file".equals(uri.getScheme()))
+      return null;
+    try{
+      return new File(uri);
+    }
+    catch(IllegalArgumentException e){
+      // e.g. an opaque, relative file: URI which has not been resolved against the data path
+      return new File(uri.getSchemeSpecificPart());
+    }
+  }
+}
@@ -0,0 +1,388 @@
+import java.io.*;
+import java.net.URL;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The DictionarySnapshot class is a read-only view over the binary dictionary file produced by
+ * DictionaryCompiler. The file is memory-mapped and queried in place, so initialize() of EntityRecognizer
+ * neither re-scans the text dictionaries nor materializes them as HashSet<String> objects on the heap.
+ *
+ * The file layout is a header (magic, version, fingerprint of the source dictionaries, section count)
+ * followed by one sorted string table per dictionary. Each table is the entry count, the char offset
+ * of every entry (plus the end offset), the UTF-16 characters of all entries padded to 4 bytes, and
+ * an open-addressed hash table of entry indexes (slot count, then the slots).
+ * The tables are followed by the token trie of the multi-word gene terms (see PhraseTrie), whose
+ * tokens are positions in the table of all known entity words.
+ *
+ * @author xuke
+ *
+ */
+public class DictionarySnapshot {
+  static final int MAGIC = 0x4b455844; // "KEXD"
+  static final int VERSION = 3;
+
+  /* section indexes, in the order DictionaryCompiler writes them */
+  static final int SINGLE_KNOWN_ENTITIES = 0;
+  static final int ALL_KNOWN_ENTITIES = 1;
+  static final int FULL_DICTIONARY = 2;
+  static final int COMMON_WORDS = 3;
+  static final int SECTION_COUNT = 4;
+
+  /* system property overriding the default snapshot location */
+  public static final String SNAPSHOT_PROPERTY = "kex.dictionary.snapshot";
+  private static final String SNAPSHOT_RESOURCE = "/dictionary/dictionary.snapshot";
+  private static final String SNAPSHOT_TMP_NAME = "hw1-kex-dictionary.snapshot";
+
+  private final long fingerprint;
+  private final Lexicon [] sections = new Lexicon[SECTION_COUNT];
+  private final PhraseTrie phrases;
+
+  DictionarySnapshot(ByteBuffer buffer) throws IOException{
+    try{
+      if(buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+        throw new IOException("Not a dictionary snapshot of version " + VERSION);
+      fingerprint = buffer.getLong(8);
+      if(buffer.getInt(16) != SECTION_COUNT)
+        throw new IOException("Unexpected number of dictionary sections");
+
+      int pos = 20;
+      for(int s = 0; s < SECTION_COUNT; s++){
+        int size = buffer.getInt(pos);
+        IntBuffer offsets = slice(buffer, pos + 4, 4 * (size + 1)).asIntBuffer();
+        int chars = offsets.get(size);
+        int charStart = pos + 4 + 4 * (size + 1);
+        CharBuffer text = slice(buffer, charStart, 2 * chars).asCharBuffer();
+        pos = charStart + 2 * (chars + (chars & 1));
+        int slotCount = buffer.getInt(pos);
+        IntBuffer slots = slice(buffer, pos + 4, 4 * slotCount).asIntBuffer();
+        sections[s] = new Lexicon(offsets, text, slots);
+        pos += 4 + 4 * slotCount;
+      }
+      
+      int nodes = buffer.getInt(pos);
+      int edges = buffer.getInt(pos + 4);
+      int words = (nodes + 31) / 32;
+      pos += 8;
+      IntBuffer childStart = slice(buffer, pos, 4 * (nodes + 1)).asIntBuffer();
+      pos += 4 * (nodes + 1);
+      IntBuffer edgeToken = slice(buffer, pos, 4 * edges).asIntBuffer();
+      pos += 4 * edges;
+      IntBuffer edgeTarget = slice(buffer, pos, 4 * edges).asIntBuffer();
+      pos += 4 * edges;
+      IntBuffer terminal = slice(buffer, pos, 4 * words).asIntBuffer();
+      phrases = new PhraseTrie(childStart, edgeToken, edgeTarget, terminal);
+    }
+    catch(BufferUnderflowException e){
+      throw new IOException("Truncated dictionary snapshot");
+    }
+    catch(IndexOutOfBoundsException e){
+      throw new IOException("Truncated dictionary snapshot");
+    }
+    catch(IllegalArgumentException e){
+      throw new IOException("Truncated dictionary snapshot");
+    }
+  }
+
+  public long getFingerprint(){
+    return fingerprint;
+  }
+
+  public Lexicon getSingleKnownEntities(){
+    return sections[SINGLE_KNOWN_ENTITIES];
+  }
+
+  public Lexicon getAllKnownEntities(){
+    return sections[ALL_KNOWN_ENTITIES];
+  }
+
+  public Lexicon getFullDictionary(){
+    return sections[FULL_DICTIONARY];
+  }
+
+  public Lexicon getCommonWords(){
+    return sections[COMMON_WORDS];
+  }
+  
+  /**
+   * @return the trie of gene terms made of several words, over the positions of their words in
+   * getAllKnownEntities().
+   */
+  public PhraseTrie getPhrases(){
+    return phrases;
+  }
+
+  /**
+   * the snapshot file used when none is given explicitly: the 'kex.dictionary.snapshot' system property,
+   * then the snapshot compiled into the classes directory at build time, then a file in java.io.tmpdir
+   * which load() fills on the first run from the snapshot packaged in the jar, or compiles.
+   */
+  public static File defaultLocation(){
+    String property = System.getProperty(SNAPSHOT_PROPERTY);
+    if(property != null && property.trim().length() > 0)
+      return new File(property.trim());
+
+    URL url = DictionarySnapshot.class.getResource(SNAPSHOT_RESOURCE);
+    if(url != null && "file".equals(url.getProtocol())){
+      try{
+        return new File(url.toURI());
+      }
+      catch(Exception e){
+        // fall through to the temporary location
+      }
+    }
+
+    return new File(System.getProperty("java.io.tmpdir"), SNAPSHOT_TMP_NAME);
+  }
+
+  /**
+   * map the snapshot stored in file. If it is missing or was built from different source dictionaries,
+   * it is copied from the snapshot packaged on the classpath (e.g. in the jar) when that one matches,
+   * and compiled otherwise. If the file cannot be written the snapshot is kept in memory.
+   */
+  public static synchronized DictionarySnapshot load(File file){
+    long fingerprint = DictionaryCompiler.fingerprint();
+    if(file.isFile()){
+      try{
+        DictionarySnapshot snapshot = map(file);
+        if(snapshot.getFingerprint() == fingerprint)
+          return snapshot;
+      }
+      catch(IOException e){
+        System.out.println("Dictionary snapshot " + file + " is corrupt, recompiling.");
+      }
+    }
+
+    byte [] data = packaged(fingerprint);
+    if(data == null)
+      data = new DictionaryCompiler().compile(fingerprint);
+    try{
+      DictionaryCompiler.write(data, file);
+      return map(file);
+    }
+    catch(IOException e){
+      System.out.println("Cannot write dictionary snapshot " + file + ", keeping it in memory.");
+    }
+
+    try{
+      return new DictionarySnapshot(ByteBuffer.wrap(data));
+    }
+    catch(IOException e){
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * the snapshot packaged on the classpath, or null if there is none or it has another fingerprint.
+   */
+  private static byte [] packaged(long fingerprint){
+    InputStream in = DictionarySnapshot.class.getResourceAsStream(SNAPSHOT_RESOURCE);
+    if(in == null)
+      return null;
+    try{
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      byte [] buffer = new byte[64 * 1024];
+      for(int n; (n = in.read(buffer)) > 0; )
+        bytes.write(buffer, 0, n);
+      byte [] data = bytes.toByteArray();
+      if(new DictionarySnapshot(ByteBuffer.wrap(data)).getFingerprint() == fingerprint)
+        return data;
+    }
+    catch(IOException e){
+      System.out.println("Packaged dictionary snapshot is corrupt, recompiling.");
+    }
+    finally{
+      try{
+        in.close();
+      }
+      catch(IOException e){
+        // everything needed was read
+      }
+    }
+    return null;
+  }
+
+  /**
+   * memory-map an existing snapshot file without checking its fingerprint.
+   */
+  public static DictionarySnapshot map(File file) throws IOException{
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try{
+      FileChannel channel = raf.getChannel();
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return new DictionarySnapshot(buffer);
+    }
+    finally{
+      // the mapping stays valid after the channel is closed
+      raf.close();
+    }
+  }
+
+  private static ByteBuffer slice(ByteBuffer buffer, int pos, int len){
+    ByteBuffer dup = buffer.duplicate();
+    dup.limit(pos + len);
+    dup.position(pos);
+    return dup.slice();
+  }
+}
+
+
+/*
+ * a sorted string table inside a snapshot with an open-addressed hash table over its entries, so that
+ * membership is checked in place without allocating: on a whole CharSequence or a slice of one, either
+ * as is or folded to lower case character by character (which saves the toLowerCase() copy).
+ */
+class Lexicon {
+private final IntBuffer offsets;
+private final CharBuffer chars;
+private final IntBuffer slots;  // entry index + 1, or 0 for an empty slot; the length is a power of 2
+private final int size;
+
+Lexicon(IntBuffer offsets, CharBuffer chars, IntBuffer slots){
+ this.offsets = offsets;
+ this.chars = chars;
+ this.slots = slots;
+ this.size = offsets.limit() - 1;
+}
+
+public int size(){
+ return size;
+}
+
+public boolean contains(CharSequence word){
+ return indexOf(word) >= 0;
+}
+
+/*
+ * same as contains(word.toString().toLowerCase()), without the copies.
+ */
+public boolean containsLowerCase(CharSequence word){
+ return word != null && find(word, 0, word.length(), true) >= 0;
+}
+
+/*
+ * position of word in the sorted table, or -1 if it is absent.
+ */
+public int indexOf(CharSequence word){
+ return word == null ? -1 : find(word, 0, word.length(), false);
+}
+
+/*
+ * position of the lower case form of word in the sorted table, or -1 if it is absent.
+ */
+public int indexOfLowerCase(CharSequence word){
+ return word == null ? -1 : find(word, 0, word.length(), true);
+}
+
+/*
+ * position of the slice [start, end) of text in the sorted table, or -1 if it is absent.
+ */
+public int indexOf(CharSequence text, int start, int end, boolean lowerCase){
+ return find(text, start, end, lowerCase);
+}
+
+/*
+ * the entry stored at index, as a String. Only used for diagnostics and rebuilding tables.
+ */
+public String get(int index){
+ int begin = offsets.get(index);
+ int end = offsets.get(index + 1);
+ char [] buf = new char[end - begin];
+ for(int k = 0; k < buf.length; k++)
+   buf[k] = chars.get(begin + k);
+ return new String(buf);
+}
+
+/*
+ * hash of a slice of text, shared with DictionaryCompiler which fills the slots.
+ */
+static int hash(CharSequence text, int start, int end, boolean lowerCase){
+ int h = 0;
+ for(int k = start; k < end; k++){
+   char c = text.charAt(k);
+   h = 31 * h + (lowerCase ? Character.toLowerCase(c) : c);
+ }
+ return h ^ (h >>> 16);
+}
+
+private int find(CharSequence text, int start, int end, boolean lowerCase){
+ int mask = slots.limit() - 1;
+ int slot = hash(text, start, end, lowerCase) & mask;
+ while(true){
+   int entry = slots.get(slot);
+   if(entry == 0)
+     return -1;
+   if(matches(entry - 1, text, start, end, lowerCase))
+     return entry - 1;
+   slot = (slot + 1) & mask;
+ }
+}
+
+private boolean matches(int index, CharSequence text, int start, int end, boolean lowerCase){
+ int begin = offsets.get(index);
+ if(offsets.get(index + 1) - begin != end - start)
+   return false;
+ for(int k = start; k < end; k++){
+   char c = text.charAt(k);
+   if(lowerCase)
+     c = Character.toLowerCase(c);
+   if(chars.get(begin + k - start) != c)
+     return false;
+ }
+ return true;
+}
+}
+
+/*
+ * a trie of gene terms made of several words, stored as flat int tables inside a snapshot. Its edges
+ * are labelled with the position of a word in the table of all known entity words, so each word is
+ * stored once no matter how many terms contain it. Node 0 is the root; the edges leaving node n are
+ * [childStart(n), childStart(n + 1)), sorted by word.
+ */
+class PhraseTrie {
+public static final int ROOT = 0;
+
+private final IntBuffer childStart;
+private final IntBuffer edgeToken;
+private final IntBuffer edgeTarget;
+private final IntBuffer terminal;
+
+PhraseTrie(IntBuffer childStart, IntBuffer edgeToken, IntBuffer edgeTarget, IntBuffer terminal){
+ this.childStart = childStart;
+ this.edgeToken = edgeToken;
+ this.edgeTarget = edgeTarget;
+ this.terminal = terminal;
+}
+
+/*
+ * the node reached from node through the word at position token, or -1 if there is none.
+ */
+public int child(int node, int token){
+ if(token < 0)
+   return -1;
+
+ int low = childStart.get(node), high = childStart.get(node + 1) - 1;
+ while(low <= high){
+   int mid = (low + high) >>> 1;
+   int t = edgeToken.get(mid);
+   if(t < token)
+     low = mid + 1;
+   else if(t > token)
+     high = mid - 1;
+   else
+     return edgeTarget.get(mid);
+ }
+ return -1;
+}
+
+/*
+ * whether the words leading to node form a complete gene term.
+ */
+public boolean isTerminal(int node){
+ return (terminal.get(node >>> 5) & (1 << (node & 31))) != 0;
+}
+}
@@ -0,0 +1,296 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.uima.util.FileUtils;
+
+/**
+ * The DocumentLoader class reads the text of an input file for FileCollectionReader. Small files are
+ * read with FileUtils.file2String() as before. Files of at least mapThreshold bytes are memory-mapped
+ * and decoded in one pass into a char array sized for the whole document, from which the document text
+ * is made: the bytes never enter the heap and the chars are not grown through the buffers of a Reader
+ * and a StringBuffer. A String keeps a copy of its own, though, so while a file is loaded the heap
+ * holds its text about twice (the array and the String).
+ * 
+ * Files can also be split into segments of at most segmentLines lines and about segmentChars characters,
+ * cut at line boundaries and read one at a time (see SegmentReader), so that a huge file becomes many
+ * CASes processed in parallel and is never held in memory as a whole.
+ * 
+ * A loader is shared by the prefetching threads of the reader, so each thread keeps its own decoder.
+ * 
+ * @author xuke
+ *
+ */
+public class DocumentLoader {
+  // chars per line assumed for the size of a segment before any line was read
+  static final int DEFAULT_LINE_CHARS = 128;
+  
+  private final String encoding;
+  private final Charset charset;
+  private final long mapThreshold;
+  private int segmentLines;
+  private int segmentChars;
+  // lines read by the segment readers so far, and their length with the '\n'
+  private final AtomicLong readLines = new AtomicLong();
+  private final AtomicLong readChars = new AtomicLong();
+  private final ThreadLocal<CharsetDecoder> decoders = new ThreadLocal<CharsetDecoder>(){
+    protected CharsetDecoder initialValue(){
+      return charset.newDecoder()
+              .onMalformedInput(CodingErrorAction.REPLACE)
+              .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+  };
+  
+  /**
+   * @param encoding charset of the files, the platform default if null or empty.
+   * @param mapThreshold size in bytes from which files are memory-mapped, or a negative value to never
+   * map them.
+   */
+  public DocumentLoader(String encoding, long mapThreshold){
+    this.encoding = encoding == null || encoding.trim().length() == 0 ? null : encoding.trim();
+    this.charset = this.encoding == null ? Charset.defaultCharset() : Charset.forName(this.encoding);
+    this.mapThreshold = mapThreshold;
+  }
+  
+  /**
+   * split files into segments of at most lines lines and chars characters (a single longer line makes
+   * a segment of its own). 0 leaves the corresponding size unlimited; both 0 disables splitting.
+   */
+  public void setSegmentation(int lines, int chars){
+    segmentLines = Math.max(0, lines);
+    segmentChars = Math.max(0, chars);
+  }
+  
+  public boolean isSplitting(){
+    return segmentLines > 0 || segmentChars > 0;
+  }
+  
+  /**
+   * the segments of file, read as SegmentReader.next() is called.
+   */
+  public SegmentReader segments(File file){
+    return new SegmentReader(this, file, charset, segmentLines, segmentChars);
+  }
+  
+  /**
+   * an estimate of the bytes read for one document of file: the whole file, or a segment when splitting.
+   * A segment of segmentLines lines is estimated from the average length of the lines read so far
+   * (DEFAULT_LINE_CHARS until some were read), never more than the file itself.
+   */
+  public long documentSize(File file){
+    long size = file.length();
+    if(segmentChars > 0)
+      size = Math.min(size, segmentChars);
+    if(segmentLines > 0)
+      size = Math.min(size, segmentLines * averageLineChars());
+    return size;
+  }
+  
+  long averageLineChars(){
+    long lines = readLines.get();
+    if(lines == 0)
+      return DEFAULT_LINE_CHARS;
+    return Math.max(1, readChars.get() / lines);
+  }
+  
+  void measured(int lines, int chars){
+    if(lines > 0){
+      readChars.addAndGet(chars);
+      readLines.addAndGet(lines);
+    }
+  }
+  
+  public String load(File file) throws IOException{
+    long length = file.length();
+    if(mapThreshold < 0 || length < mapThreshold)
+      return FileUtils.file2String(file, encoding);
+    return map(file, length);
+  }
+  
+  private String map(File file, long length) throws IOException{
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    MappedByteBuffer bytes;
+    try{
+      FileChannel channel = raf.getChannel();
+      length = channel.size();
+      if(length > Integer.MAX_VALUE)
+        throw new IOException("File " + file + " is too large to be a single document");
+      bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+    }
+    finally{
+      // the mapping stays valid after the channel is closed
+      raf.close();
+    }
+    
+    CharsetDecoder decoder = decoders.get();
+    long capacity = (long) Math.ceil(length * (double) decoder.maxCharsPerByte());
+    return decode(bytes, decoder, (int) Math.min(capacity, Integer.MAX_VALUE - 8), file);
+  }
+  
+  /*
+   * decode bytes into a String of at most capacity chars. More chars than that, like any other
+   * decoding error, is an IOException: throwException() reports an overflow unchecked.
+   */
+  static String decode(ByteBuffer bytes, CharsetDecoder decoder, int capacity, File file) throws IOException{
+    decoder.reset();
+    CharBuffer chars = CharBuffer.allocate(capacity);
+    
+    CoderResult result = decoder.decode(bytes, chars, true);
+    if(result.isUnderflow())
+      result = decoder.flush(chars);
+    if(result.isOverflow())
+      throw new IOException("File " + file + " decodes to more than " + capacity + " chars");
+    if(!result.isUnderflow()){
+      try{
+        result.throwException();
+      }
+      catch(CharacterCodingException e){
+        throw new IOException("Cannot decode " + file + ": " + e);
+      }
+    }
+    
+    chars.flip();
+    return chars.toString();
+  }
+}
+
+
+/*
+ * a part of an input file, the text of one CAS: lines [firstLine, firstLine + number of lines) of file.
+ */
+class Segment {
+private final File file;
+private final String text;
+private final int firstLine;
+private final int index;
+private final boolean last;
+
+Segment(File file, String text, int firstLine, int index, boolean last){
+ this.file = file;
+ this.text = text;
+ this.firstLine = firstLine;
+ this.index = index;
+ this.last = last;
+}
+
+public File getFile(){
+ return file;
+}
+
+public String getText(){
+ return text;
+}
+
+public int getFirstLine(){
+ return firstLine;
+}
+
+public int getIndex(){
+ return index;
+}
+
+public boolean isLast(){
+ return last;
+}
+}
+
+/*
+ * reads the segments of one file in order. Each next() reads the lines of one segment, ending each with
+ * '\n', then looks at the following line to tell whether the segment is the last one. The file is opened
+ * by the first next() and closed once the last segment (or an error) is reached. next() is called by one
+ * thread at a time, but not always the same one, hence the volatile flag read by the prefetcher.
+ */
+class SegmentReader {
+private final DocumentLoader loader;
+private final File file;
+private final Charset charset;
+private final int maxLines;
+private final int maxChars;
+private BufferedReader reader;
+private String pendingLine;  // first line of the next segment, already read
+private int nextLine = 1;
+private int index;
+private volatile boolean finished;
+
+SegmentReader(DocumentLoader loader, File file, Charset charset, int maxLines, int maxChars){
+ this.loader = loader;
+ this.file = file;
+ this.charset = charset;
+ this.maxLines = maxLines;
+ this.maxChars = maxChars;
+}
+
+public File getFile(){
+ return file;
+}
+
+public boolean isFinished(){
+ return finished;
+}
+
+/*
+ * the next segment, or null once the last one was returned.
+ */
+public Segment next() throws IOException{
+ if(finished)
+   return null;
+ 
+ try{
+   if(reader == null){
+     reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), charset));
+     pendingLine = reader.readLine();
+   }
+   
+   int firstLine = nextLine;
+   int lines = 0;
+   StringBuilder text = new StringBuilder();
+   while(pendingLine != null){
+     if(lines > 0 && maxChars > 0 && text.length() + pendingLine.length() + 1 > maxChars)
+       break;
+     if(maxLines > 0 && lines >= maxLines)
+       break;
+     
+     text.append(pendingLine).append('\n');
+     lines++;
+     pendingLine = reader.readLine();
+   }
+   nextLine += lines;
+   loader.measured(lines, text.length());
+   
+   boolean last = pendingLine == null;
+   if(last)
+     close();
+   return new Segment(file, text.toString(), firstLine, index++, last);
+ }
+ catch(IOException e){
+   close();
+   throw e;
+ }
+}
+
+private void close(){
+ finished = true;
+ if(reader != null){
+   try{
+     reader.close();
+   }
+   catch(IOException e){
+     // everything needed was read
+   }
+   reader = null;
+ }
+}
+}
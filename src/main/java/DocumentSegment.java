@@ -0,0 +1,136 @@
+
+
+/* First created by JCasGen Thu Oct 18 10:12:40 CST 2012 */
+
+import org.apache.uima.jcas.JCas; 
+import org.apache.uima.jcas.JCasRegistry;
+import org.apache.uima.jcas.cas.TOP_Type;
+
+import org.apache.uima.jcas.tcas.Annotation;
+
+
+/** 
+ * the part of an input file held by a CAS, when the collection reader splits files
+ * XML source: src/main/resources/NerTypeSystem.xml
+ * @generated */
+public class DocumentSegment extends Annotation {
+  /** @generated
+   * @ordered 
+   */
+  @SuppressWarnings ("hiding")
+  public final static int typeIndexID = JCasRegistry.register(DocumentSegment.class);
+  /** @generated
+   * @ordered 
+   */
+  @SuppressWarnings ("hiding")
+  public final static int type = typeIndexID;
+  /** @generated  */
+  @Override
+  public              int getTypeIndexID() {return typeIndexID;}
+ 
+  /** Never called.  Disable default constructor
+   * @generated */
+  protected DocumentSegment() {/* intentionally empty block */}
+    
+  /** Internal - constructor used by generator 
+   * @generated */
+  public DocumentSegment(int addr, TOP_Type type) {
+    super(addr, type);
+    readObject();
+  }
+  
+  /** @generated */
+  public DocumentSegment(JCas jcas) {
+    super(jcas);
+    readObject();   
+  } 
+
+  /** @generated */  
+  public DocumentSegment(JCas jcas, int begin, int end) {
+    super(jcas);
+    setBegin(begin);
+    setEnd(end);
+    readObject();
+  }   
+
+  /** <!-- begin-user-doc -->
+    * Write your own initialization here
+    * <!-- end-user-doc -->
+  @generated modifiable */
+  private void readObject() {/*default - does nothing empty block */}
+     
+ 
+    
+  //*--------------*
+  //* Feature: sourceFile
+
+  /** getter for sourceFile - gets path of the input file the segment was read from
+   * @generated */
+  public String getSourceFile() {
+    if (DocumentSegment_Type.featOkTst && ((DocumentSegment_Type)jcasType).casFeat_sourceFile == null)
+      jcasType.jcas.throwFeatMissing("sourceFile", "DocumentSegment");
+    return jcasType.ll_cas.ll_getStringValue(addr, ((DocumentSegment_Type)jcasType).casFeatCode_sourceFile);}
+    
+  /** setter for sourceFile - sets path of the input file the segment was read from 
+   * @generated */
+  public void setSourceFile(String v) {
+    if (DocumentSegment_Type.featOkTst && ((DocumentSegment_Type)jcasType).casFeat_sourceFile == null)
+      jcasType.jcas.throwFeatMissing("sourceFile", "DocumentSegment");
+    jcasType.ll_cas.ll_setStringValue(addr, ((DocumentSegment_Type)jcasType).casFeatCode_sourceFile, v);}    
+   
+    
+  //*--------------*
+  //* Feature: firstLine
+
+  /** getter for firstLine - gets number (from 1) of the first line of the segment in the input file
+   * @generated */
+  public int getFirstLine() {
+    if (DocumentSegment_Type.featOkTst && ((DocumentSegment_Type)jcasType).casFeat_firstLine == null)
+      jcasType.jcas.throwFeatMissing("firstLine", "DocumentSegment");
+    return jcasType.ll_cas.ll_getIntValue(addr, ((DocumentSegment_Type)jcasType).casFeatCode_firstLine);}
+    
+  /** setter for firstLine - sets number (from 1) of the first line of the segment in the input file 
+   * @generated */
+  public void setFirstLine(int v) {
+    if (DocumentSegment_Type.featOkTst && ((DocumentSegment_Type)jcasType).casFeat_firstLine == null)
+      jcasType.jcas.throwFeatMissing("firstLine", "DocumentSegment");
+    jcasType.ll_cas.ll_setIntValue(addr, ((DocumentSegment_Type)jcasType).casFeatCode_firstLine, v);}    
+   
+    
+  //*--------------*
+  //* Feature: segmentIndex
+
+  /** getter for segmentIndex - gets position (from 0) of the segment among the segments of the input file
+   * @generated */
+  public int getSegmentIndex() {
+    if (DocumentSegment_Type.featOkTst && ((DocumentSegment_Type)jcasType).casFeat_segmentIndex == null)
+      jcasType.jcas.throwFeatMissing("segmentIndex", "DocumentSegment");
+    return jcasType.ll_cas.ll_getIntValue(addr, ((DocumentSegment_Type)jcasType).casFeatCode_segmentIndex);}
+    
+  /** setter for segmentIndex - sets position (from 0) of the segment among the segments of the input file 
+   * @generated */
+  public void setSegmentIndex(int v) {
+    if (DocumentSegment_Type.featOkTst && ((DocumentSegment_Type)jcasType).casFeat_segmentIndex == null)
+      jcasType.jcas.throwFeatMissing("segmentIndex", "DocumentSegment");
+    jcasType.ll_cas.ll_setIntValue(addr, ((DocumentSegment_Type)jcasType).casFeatCode_segmentIndex, v);}    
+   
+    
+  //*--------------*
+  //* Feature: lastSegment
+
+  /** getter for lastSegment - gets whether the segment ends the input file
+   * @generated */
+  public boolean getLastSegment() {
+    if (DocumentSegment_Type.featOkTst && ((DocumentSegment_Type)jcasType).casFeat_lastSegment == null)
+      jcasType.jcas.throwFeatMissing("lastSegment", "DocumentSegment");
+    return jcasType.ll_cas.ll_getBooleanValue(addr, ((DocumentSegment_Type)jcasType).casFeatCode_lastSegment);}
+    
+  /** setter for lastSegment - sets whether the segment ends the input file 
+   * @generated */
+  public void setLastSegment(boolean v) {
+    if (DocumentSegment_Type.featOkTst && ((DocumentSegment_Type)jcasType).casFeat_lastSegment == null)
+      jcasType.jcas.throwFeatMissing("lastSegment", "DocumentSegment");
+    jcasType.ll_cas.ll_setBooleanValue(addr, ((DocumentSegment_Type)jcasType).casFeatCode_lastSegment, v);}    
+  }
+
+    
\ No newline at end of file
@@ -0,0 +1,147 @@
+
+/* First created by JCasGen Thu Oct 18 10:12:40 CST 2012 */
+
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.JCasRegistry;
+import org.apache.uima.cas.impl.CASImpl;
+import org.apache.uima.cas.impl.FSGenerator;
+import org.apache.uima.cas.FeatureStructure;
+import org.apache.uima.cas.impl.TypeImpl;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.impl.FeatureImpl;
+import org.apache.uima.cas.Feature;
+import org.apache.uima.jcas.tcas.Annotation_Type;
+
+/** the part of an input file held by a CAS, when the collection reader splits files
+ * Updated by JCasGen Thu Oct 18 10:12:40 CST 2012
+ * @generated */
+public class DocumentSegment_Type extends Annotation_Type {
+  /** @generated */
+  @Override
+  protected FSGenerator getFSGenerator() {return fsGenerator;}
+  /** @generated */
+  private final FSGenerator fsGenerator = 
+    new FSGenerator() {
+      public FeatureStructure createFS(int addr, CASImpl cas) {
+  			 if (DocumentSegment_Type.this.useExistingInstance) {
+  			   // Return eq fs instance if already created
+  		     FeatureStructure fs = DocumentSegment_Type.this.jcas.getJfsFromCaddr(addr);
+  		     if (null == fs) {
+  		       fs = new DocumentSegment(addr, DocumentSegment_Type.this);
+  			   DocumentSegment_Type.this.jcas.putJfsFromCaddr(addr, fs);
+  			   return fs;
+  		     }
+  		     return fs;
+        } else return new DocumentSegment(addr, DocumentSegment_Type.this);
+  	  }
+    };
+  /** @generated */
+  @SuppressWarnings ("hiding")
+  public final static int typeIndexID = DocumentSegment.typeIndexID;
+  /** @generated 
+     @modifiable */
+  @SuppressWarnings ("hiding")
+  public final static boolean featOkTst = JCasRegistry.getFeatOkTst("DocumentSegment");
+ 
+  /** @generated */
+  final Feature casFeat_sourceFile;
+  /** @generated */
+  final int     casFeatCode_sourceFile;
+  /** @generated */ 
+  public String getSourceFile(int addr) {
+        if (featOkTst && casFeat_sourceFile == null)
+      jcas.throwFeatMissing("sourceFile", "DocumentSegment");
+    return ll_cas.ll_getStringValue(addr, casFeatCode_sourceFile);
+  }
+  /** @generated */    
+  public void setSourceFile(int addr, String v) {
+        if (featOkTst && casFeat_sourceFile == null)
+      jcas.throwFeatMissing("sourceFile", "DocumentSegment");
+    ll_cas.ll_setStringValue(addr, casFeatCode_sourceFile, v);}
+    
+  
+ 
+  /** @generated */
+  final Feature casFeat_firstLine;
+  /** @generated */
+  final int     casFeatCode_firstLine;
+  /** @generated */ 
+  public int getFirstLine(int addr) {
+        if (featOkTst && casFeat_firstLine == null)
+      jcas.throwFeatMissing("firstLine", "DocumentSegment");
+    return ll_cas.ll_getIntValue(addr, casFeatCode_firstLine);
+  }
+  /** @generated */    
+  public void setFirstLine(int addr, int v) {
+        if (featOkTst && casFeat_firstLine == null)
+      jcas.throwFeatMissing("firstLine", "DocumentSegment");
+    ll_cas.ll_setIntValue(addr, casFeatCode_firstLine, v);}
+    
+  
+ 
+  /** @generated */
+  final Feature casFeat_segmentIndex;
+  /** @generated */
+  final int     casFeatCode_segmentIndex;
+  /** @generated */ 
+  public int getSegmentIndex(int addr) {
+        if (featOkTst && casFeat_segmentIndex == null)
+      jcas.throwFeatMissing("segmentIndex", "DocumentSegment");
+    return ll_cas.ll_getIntValue(addr, casFeatCode_segmentIndex);
+  }
+  /** @generated */    
+  public void setSegmentIndex(int addr, int v) {
+        if (featOkTst && casFeat_segmentIndex == null)
+      jcas.throwFeatMissing("segmentIndex", "DocumentSegment");
+    ll_cas.ll_setIntValue(addr, casFeatCode_segmentIndex, v);}
+    
+  
+ 
+  /** @generated */
+  final Feature casFeat_lastSegment;
+  /** @generated */
+  final int     casFeatCode_lastSegment;
+  /** @generated */ 
+  public boolean getLastSegment(int addr) {
+        if (featOkTst && casFeat_lastSegment == null)
+      jcas.throwFeatMissing("lastSegment", "DocumentSegment");
+    return ll_cas.ll_getBooleanValue(addr, casFeatCode_lastSegment);
+  }
+  /** @generated */    
+  public void setLastSegment(int addr, boolean v) {
+        if (featOkTst && casFeat_lastSegment == null)
+      jcas.throwFeatMissing("lastSegment", "DocumentSegment");
+    ll_cas.ll_setBooleanValue(addr, casFeatCode_lastSegment, v);}
+    
+  
+
+
+
+  /** initialize variables to correspond with Cas Type and Features
+	* @generated */
+  public DocumentSegment_Type(JCas jcas, Type casType) {
+    super(jcas, casType);
+    casImpl.getFSClassRegistry().addGeneratorForType((TypeImpl)this.casType, getFSGenerator());
+
+ 
+    casFeat_sourceFile = jcas.getRequiredFeatureDE(casType, "sourceFile", "uima.cas.String", featOkTst);
+    casFeatCode_sourceFile  = (null == casFeat_sourceFile) ? JCas.INVALID_FEATURE_CODE : ((FeatureImpl)casFeat_sourceFile).getCode();
+
+ 
+    casFeat_firstLine = jcas.getRequiredFeatureDE(casType, "firstLine", "uima.cas.Integer", featOkTst);
+    casFeatCode_firstLine  = (null == casFeat_firstLine) ? JCas.INVALID_FEATURE_CODE : ((FeatureImpl)casFeat_firstLine).getCode();
+
+ 
+    casFeat_segmentIndex = jcas.getRequiredFeatureDE(casType, "segmentIndex", "uima.cas.Integer", featOkTst);
+    casFeatCode_segmentIndex  = (null == casFeat_segmentIndex) ? JCas.INVALID_FEATURE_CODE : ((FeatureImpl)casFeat_segmentIndex).getCode();
+
+ 
+    casFeat_lastSegment = jcas.getRequiredFeatureDE(casType, "lastSegment", "uima.cas.Boolean", featOkTst);
+    casFeatCode_lastSegment  = (null == casFeat_lastSegment) ? JCas.INVALID_FEATURE_CODE : ((FeatureImpl)casFeat_lastSegment).getCode();
+
+  }
+}
+
+
+
+    
\ No newline at end of file
@@ -0,0 +1,365 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * The EntityOutput class is the output file of a run, shared by all replicas of GeneNameConsumer that
+ * name the same file. It is split into shardCount EntityWriter shards, "file.0" to "file.(N-1)", handed
+ * out to the replicas in turn, so that consumers running on different CPE threads do not wait for each
+ * other's writes. With a single shard every replica writes to the file itself. Shards and file are all
+ * in the same format, text or binary (see EntityWriter).
+ * 
+ * When the last replica releases the output, the shards are closed and, if merging is enabled, combined
+ * into the file by a k-way merge ordered by sentence ID (entities of the same sentence keep the order
+ * they were written in), then deleted.
+ * 
+ * With write-behind, each shard is written by a dedicated daemon thread from a queue of documents, so
+ * replicas hand their entities over with write() instead of waiting for the disk. The queue of a shard
+ * holds at most WRITE_BEHIND_ENTITIES entities, however they are split into documents, which bounds
+ * its memory. Errors of those writes are reported by the next write() to the shard or by release().
+ * 
+ * @author xuke
+ *
+ */
+public class EntityOutput {
+  // outputs currently open, by canonical file
+  private static final Map<File, EntityOutput> outputs = new HashMap<File, EntityOutput>();
+  
+  private final File file;
+  private final File key;
+  private final String format;
+  private final String encoding;
+  private final EntityWriter [] shards;
+  private final boolean merge;
+  // queues of the shards when writing behind, else null
+  private final ShardWriteBehind [] writeBehind;
+  private final ExecutorService writeThreads;
+  private int users;
+  private int nextShard;
+  
+  /* entities waiting for the writer of a shard, per shard */
+  static final int WRITE_BEHIND_ENTITIES = 16 * 1024;
+  
+  private EntityOutput(File file, File key, String format, String encoding, int shardCount, boolean merge, 
+          int flushBatchSize, boolean writeBehind) throws IOException{
+    this.file = file;
+    this.key = key;
+    this.format = format;
+    this.encoding = encoding;
+    this.merge = merge && shardCount > 1;
+    
+    shards = new EntityWriter[Math.max(1, shardCount)];
+    try{
+      for(int s = 0; s < shards.length; s++)
+        shards[s] = EntityWriter.open(shards.length == 1 ? file : shardFile(file, s), format, encoding, 
+                flushBatchSize);
+    }
+    catch(IOException e){
+      closeShards();
+      throw e;
+    }
+    
+    if(writeBehind){
+      this.writeBehind = new ShardWriteBehind[shards.length];
+      // a writer blocks on the disk for good, so it gets a platform thread of its own
+      writeThreads = Executors.newFixedThreadPool(shards.length, VirtualThreads.daemonThreads("kex-write"));
+      for(int s = 0; s < shards.length; s++){
+        this.writeBehind[s] = new ShardWriteBehind(shards[s], WRITE_BEHIND_ENTITIES);
+        writeThreads.execute(this.writeBehind[s]);
+      }
+    }
+    else{
+      this.writeBehind = null;
+      writeThreads = null;
+    }
+  }
+  
+  /**
+   * the output open on file, opening it with the given settings if no replica uses it yet. Every call
+   * must be paired with a call of release().
+   * @param writeBehind whether shards are written by threads of their own, see write().
+   */
+  public static EntityOutput acquire(File file, String format, String encoding, int shardCount, 
+          boolean merge, int flushBatchSize, boolean writeBehind) throws IOException{
+    File key = file.getCanonicalFile();
+    synchronized(outputs){
+      EntityOutput output = outputs.get(key);
+      if(output == null){
+        output = new EntityOutput(file, key, format, encoding, shardCount, merge, flushBatchSize, writeBehind);
+        outputs.put(key, output);
+      }
+      output.users++;
+      return output;
+    }
+  }
+  
+  /**
+   * the shard a new replica writes to: shards are handed out round robin, so replicas share a shard
+   * only when there are more replicas than shards.
+   */
+  public synchronized EntityWriter nextShard(){
+    EntityWriter shard = shards[nextShard];
+    nextShard = (nextShard + 1) % shards.length;
+    return shard;
+  }
+  
+  public int getShardCount(){
+    return shards.length;
+  }
+  
+  public boolean isWriteBehind(){
+    return writeBehind != null;
+  }
+  
+  /**
+   * queue the entities of a document for the writer of shard, waiting only while its queue holds too
+   * many entities to take them. Only
+   * for an output opened with write-behind; otherwise callers write to the shard themselves.
+   */
+  public void write(EntityWriter shard, List<MyAnnotation> entities) throws IOException{
+    for(int s = 0; s < shards.length; s++){
+      if(shards[s] == shard){
+        writeBehind[s].submit(entities);
+        return;
+      }
+    }
+    throw new IOException("Not a shard of " + file);
+  }
+  
+  /**
+   * release the output acquired by a replica. The last release closes the shards and merges them.
+   * @return true for the last release, once the file is complete.
+   */
+  public boolean release() throws IOException{
+    synchronized(outputs){
+      if(--users > 0)
+        return false;
+      outputs.remove(key);
+    }
+    
+    IOException error = null;
+    if(writeBehind != null){
+      for(ShardWriteBehind w : writeBehind){
+        try{
+          w.finish();
+        }
+        catch(IOException e){
+          error = e;
+        }
+      }
+      writeThreads.shutdown();
+    }
+    closeShards();
+    if(error != null)
+      throw error;
+    if(merge)
+      merge();
+    return true;
+  }
+  
+  static File shardFile(File file, int shard){
+    return new File(file.getPath() + "." + shard);
+  }
+  
+  private void closeShards() throws IOException{
+    IOException error = null;
+    for(EntityWriter shard : shards){
+      try{
+        if(shard != null)
+          shard.close();
+      }
+      catch(IOException e){
+        error = e;
+      }
+    }
+    if(error != null)
+      throw error;
+  }
+  
+  /*
+   * sort every shard by sentence ID (a stable sort, one shard in memory at a time), then merge the
+   * sorted shards into the output file.
+   */
+  private void merge() throws IOException{
+    for(EntityWriter shard : shards)
+      sortShard(shard.getFile());
+    
+    PriorityQueue<MergeHead> heads = new PriorityQueue<MergeHead>();
+    EntityWriter out = null;
+    try{
+      for(int s = 0; s < shards.length; s++){
+        MergeHead head = new MergeHead(s, EntityReader.open(shards[s].getFile(), encoding));
+        if(head.advance())
+          heads.add(head);
+        else
+          head.close();
+      }
+      
+      out = EntityWriter.open(file, format, encoding, 0);
+      while(!heads.isEmpty()){
+        MergeHead head = heads.poll();
+        EntityReader r = head.reader;
+        out.write(r.getSentenceID(), r.getBegin(), r.getEnd(), r.getName());
+        if(head.advance())
+          heads.add(head);
+        else
+          head.close();
+      }
+    }
+    finally{
+      for(MergeHead head : heads)
+        head.close();
+      if(out != null)
+        out.close();
+    }
+    
+    for(EntityWriter shard : shards)
+      shard.getFile().delete();
+  }
+  
+  private void sortShard(File shard) throws IOException{
+    List<MyAnnotation> entities = EntityReader.readAll(shard, encoding);
+    Collections.sort(entities, new Comparator<MyAnnotation>(){
+      public int compare(MyAnnotation a, MyAnnotation b){
+        return a.getSentenceID().compareTo(b.getSentenceID());
+      }
+    });
+    
+    EntityWriter out = EntityWriter.open(shard, format, encoding, 0);
+    try{
+      for(MyAnnotation ann : entities)
+        out.write(ann.getSentenceID(), ann.getBegin(), ann.getEnd(), ann.getName());
+    }
+    finally{
+      out.close();
+    }
+  }
+}
+
+
+/*
+ * the current entity of one sorted shard during the merge. Ties between shards go to the lower shard,
+ * so the merge is deterministic.
+ */
+class MergeHead implements Comparable<MergeHead>{
+private final int shard;
+final EntityReader reader;
+
+MergeHead(int shard, EntityReader reader){
+ this.shard = shard;
+ this.reader = reader;
+}
+
+boolean advance() throws IOException{
+ return reader.next();
+}
+
+void close() throws IOException{
+ reader.close();
+}
+
+@Override
+public int compareTo(MergeHead o) {
+ int c = reader.getSentenceID().compareTo(o.reader.getSentenceID());
+ if(c != 0)
+   return c;
+ return shard - o.shard;
+}
+}
+
+/*
+ * writes the documents queued for one shard, in the order they were queued. The queue is bounded by
+ * the number of entities it holds: a document takes a permit per entity (at least one, at most all of
+ * them, so a document larger than the queue waits for it to be empty) until it is written. After a
+ * failed write the remaining documents are dropped, and the error is reported to the next caller.
+ */
+class ShardWriteBehind implements Runnable {
+private static final List<MyAnnotation> END = new ArrayList<MyAnnotation>();
+
+private final EntityWriter shard;
+private final int capacity;
+private final Semaphore permits;
+private final BlockingQueue<List<MyAnnotation>> queue = new LinkedBlockingQueue<List<MyAnnotation>>();
+private final CountDownLatch done = new CountDownLatch(1);
+private volatile IOException error;
+
+ShardWriteBehind(EntityWriter shard, int capacity){
+ this.shard = shard;
+ this.capacity = Math.max(1, capacity);
+ // fair, so that a large document is not overtaken forever by small ones
+ this.permits = new Semaphore(this.capacity, true);
+}
+
+private int permits(List<MyAnnotation> entities){
+ return Math.max(1, Math.min(entities.size(), capacity));
+}
+
+void submit(List<MyAnnotation> entities) throws IOException{
+ check();
+ if(done.getCount() == 0)
+   throw new IOException("Output file " + shard.getFile() + " is already closed");
+ try{
+   permits.acquire(permits(entities));
+   queue.put(entities);
+ }
+ catch(InterruptedException e){
+   Thread.currentThread().interrupt();
+   throw new IOException("Interrupted while queuing entities for " + shard.getFile());
+ }
+}
+
+/*
+ * wait until every queued document is written.
+ */
+void finish() throws IOException{
+ try{
+   queue.put(END);
+   done.await();
+ }
+ catch(InterruptedException e){
+   Thread.currentThread().interrupt();
+   throw new IOException("Interrupted while writing " + shard.getFile());
+ }
+ check();
+}
+
+public void run(){
+ try{
+   while(true){
+     List<MyAnnotation> entities = queue.take();
+     if(entities == END)
+       break;
+     
+     try{
+       if(error == null){
+         for(MyAnnotation ann : entities)
+           shard.write(ann.getSentenceID(), ann.getBegin(), ann.getEnd(), ann.getName());
+       }
+     }
+     catch(IOException e){
+       error = e;
+     }
+     finally{
+       permits.release(permits(entities));
+     }
+   }
+ }
+ catch(InterruptedException e){
+   error = new IOException("Interrupted while writing " + shard.getFile());
+ }
+ finally{
+   done.countDown();
+ }
+}
+
+private void check() throws IOException{
+ IOException e = error;
+ if(e != null)
+   throw new IOException("Cannot write " + shard.getFile(), e);
+}
+}
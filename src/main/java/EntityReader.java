@@ -0,0 +1,231 @@
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The EntityReader class reads back an output file of GeneNameConsumer, in either format written by
+ * EntityWriter. The format is recognized from the header of the file: both the magic number and the
+ * version must match for a binary file, so a text file whose first sentence ID happens to start with
+ * "KEXE" is still read as text. Entities are read one at a time: next() moves to the following entity,
+ * whose fields are then returned by the getters.
+ * 
+ * main() prints binary output files in the text format.
+ * 
+ * @author xuke
+ *
+ */
+public abstract class EntityReader {
+  protected String sentenceID;
+  protected String name;
+  protected int begin, end;
+  
+  /**
+   * open file for reading.
+   * @param encoding charset of a text file, the system default if null or empty.
+   */
+  public static EntityReader open(File file, String encoding) throws IOException{
+    InputStream in = new BufferedInputStream(new FileInputStream(file), EntityWriter.BUFFER_SIZE);
+    try{
+      in.mark(8);
+      DataInputStream data = new DataInputStream(in);
+      int magic = 0, version = 0;
+      try{
+        magic = data.readInt();
+        version = data.readInt();
+      }
+      catch(EOFException e){
+        // shorter than a header, so a text file
+      }
+      
+      if(magic == BinaryEntityWriter.MAGIC && version == BinaryEntityWriter.VERSION)
+        return new BinaryEntityReader(data);
+      
+      in.reset();
+      if(encoding != null && encoding.trim().length() > 0)
+        return new TextEntityReader(new BufferedReader(new InputStreamReader(in, encoding.trim())));
+      return new TextEntityReader(new BufferedReader(new InputStreamReader(in)));
+    }
+    catch(IOException e){
+      in.close();
+      throw e;
+    }
+  }
+  
+  /**
+   * read all entities of file.
+   */
+  public static List<MyAnnotation> readAll(File file, String encoding) throws IOException{
+    List<MyAnnotation> entities = new ArrayList<MyAnnotation>();
+    EntityReader reader = open(file, encoding);
+    try{
+      while(reader.next()){
+        MyAnnotation ann = new MyAnnotation();
+        ann.setSentenceID(reader.getSentenceID());
+        ann.setBegin(reader.getBegin());
+        ann.setEnd(reader.getEnd());
+        ann.setName(reader.getName());
+        entities.add(ann);
+      }
+    }
+    finally{
+      reader.close();
+    }
+    return entities;
+  }
+  
+  /**
+   * move to the next entity.
+   * @return false at the end of the file.
+   */
+  public abstract boolean next() throws IOException;
+  
+  public abstract void close() throws IOException;
+  
+  public String getSentenceID(){
+    return sentenceID;
+  }
+  
+  public String getName(){
+    return name;
+  }
+  
+  public int getBegin(){
+    return begin;
+  }
+  
+  public int getEnd(){
+    return end;
+  }
+  
+  /**
+   * print the entities of the files given as arguments to the standard output, one text line each.
+   */
+  public static void main(String [] args) throws IOException{
+    if(args.length == 0){
+      System.out.println("Usage: EntityReader file...");
+      return;
+    }
+    
+    Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+    for(String arg : args){
+      EntityReader reader = open(new File(arg), null);
+      try{
+        while(reader.next()){
+          out.write(reader.getSentenceID() + "|" + reader.getBegin() + " " + reader.getEnd() + "|" 
+                  + reader.getName() + "\n");
+        }
+      }
+      finally{
+        reader.close();
+      }
+    }
+    out.flush();
+  }
+}
+
+
+/*
+ * reads "sentenceID|begin end|name" lines.
+ */
+class TextEntityReader extends EntityReader {
+private final BufferedReader reader;
+
+TextEntityReader(BufferedReader reader){
+ this.reader = reader;
+}
+
+public boolean next() throws IOException{
+ String line;
+ while((line = reader.readLine()) != null){
+   int bar = line.indexOf('|');
+   int space = line.indexOf(' ', bar + 1);
+   int bar2 = space < 0 ? -1 : line.indexOf('|', space + 1);
+   if(bar < 0 || bar2 < 0)
+     continue;  // not an entity line
+   
+   sentenceID = line.substring(0, bar);
+   begin = Integer.parseInt(line.substring(bar + 1, space));
+   end = Integer.parseInt(line.substring(space + 1, bar2));
+   name = line.substring(bar2 + 1);
+   return true;
+ }
+ return false;
+}
+
+public void close() throws IOException{
+ reader.close();
+}
+}
+
+/*
+ * reads the format described in BinaryEntityWriter, whose magic number was already consumed.
+ */
+class BinaryEntityReader extends EntityReader {
+private final DataInputStream in;
+private final List<String> names = new ArrayList<String>();
+private final int maxNames;
+
+/*
+ * in is positioned after the magic number and the version.
+ */
+BinaryEntityReader(DataInputStream in) throws IOException{
+ this.in = in;
+ maxNames = in.readInt();
+}
+
+public boolean next() throws IOException{
+ int first = in.read();
+ if(first < 0)
+   return false;
+ 
+ try{
+   int sentence = readVarint(first);
+   if(sentence > 0)
+     sentenceID = readString(sentence - 1);
+   else if(sentenceID == null)
+     throw new IOException("Corrupt entity file: missing sentence ID");
+   
+   int ref = readVarint(in.readUnsignedByte());
+   if(ref > 0){
+     if(ref > names.size())
+       throw new IOException("Corrupt entity file: unknown name " + ref);
+     name = names.get(ref - 1);
+   }
+   else{
+     name = readString(readVarint(in.readUnsignedByte()));
+     if(names.size() < maxNames)
+       names.add(name);
+   }
+   
+   begin = readVarint(in.readUnsignedByte());
+   end = begin + readVarint(in.readUnsignedByte());
+   return true;
+ }
+ catch(EOFException e){
+   throw new IOException("Truncated entity file");
+ }
+}
+
+private int readVarint(int b) throws IOException{
+ int value = b & 0x7f;
+ int shift = 7;
+ while((b & 0x80) != 0){
+   if(shift > 28)
+     throw new IOException("Corrupt entity file: varint too long");
+   b = in.readUnsignedByte();
+   value |= (b & 0x7f) << shift;
+   shift += 7;
+ }
+ return value;
+}
+
+private String readString(int length) throws IOException{
+ byte [] bytes = new byte[length];
+ in.readFully(bytes);
+ return new String(bytes, "UTF-8");
+}
+
+public void close() throws IOException{
+ in.close();
+}
+}
@@ -1,129 +1,285 @@
 import java.io.*;
 
 import edu.stanford.nlp.ling.CoreLabel;
-import edu.stanford.nlp.ling.Word;
-import edu.stanford.nlp.ling.CoreAnnotations.PartOfSpeechAnnotation;
-import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
-import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
+import edu.stanford.nlp.ling.TaggedWord;
 import edu.stanford.nlp.objectbank.TokenizerFactory;
-import edu.stanford.nlp.pipeline.Annotation;
-import edu.stanford.nlp.pipeline.StanfordCoreNLP;
-import edu.stanford.nlp.process.Morphology;
-import edu.stanford.nlp.process.PTBTokenizer.PTBTokenizerFactory;
-import edu.stanford.nlp.process.Tokenizer;
-import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.pipeline.DefaultPaths;
+import edu.stanford.nlp.process.CoreLabelTokenFactory;
+import edu.stanford.nlp.process.PTBTokenizer;
+import edu.stanford.nlp.process.WordToSentenceProcessor;
+import edu.stanford.nlp.tagger.maxent.MaxentTagger;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * The EntityRecognizer class encapsulates core routine for recognizing gene name entities, by
  * first calling the initialize() method and then calling the recognizeEntities(String inputStr) method.
  * Specifically, initialize() method load dictionaries that are helpful for lexical preprocessing and future 
  * recognization, then recognizeEntities(String inputStr) accepts a formatted text, recognizes gene names in it,
- * and populate the member 'entities' with a mid-structure MyAnnotation. After recognization, results can be
- * used for 'Cas Consumer' by calling getEntities() method.
+ * and returns them as a fresh list of the mid-structure MyAnnotation, ready to be used for 'Cas Consumer'.
+ * After initialize(), the recognizer keeps no per-call state, so one instance can serve any number of
+ * threads concurrently; POS tagging is done by at most getMaxPosTaggers() of them at a time.
  * 
  * @author xuke
  *
  */
 public class EntityRecognizer{
-  /* dictionary files, which actually should be written into a resource file. */
-  private String GENE_TERM_DIC = "/dictionary/gene_term_dictionary.txt";
-  private String COMMON_WORDS = "/dictionary/common_words.txt";
-  private String FULL_WORDS = "/dictionary/full_dictionary.txt";
-  private String CORPUS = "/dictionary/gone_with_the_wind.txt";
+  /* version of the recognition rules, to be increased by any change that can alter the entities found
+   * in a text, so that results cached by an earlier version are not reused (see ResultCache). */
+  public static final int VERSION = 1;
   
   // the Part-Of-Speech tagger, which is used to assist the final filtering of gene names.
-  private PosTagger posTagger = new PosTagger();
+  private final PosTagger posTagger = new PosTagger();
+  
+  // the tokenizer factory only holds options, so it is shared by all lines and threads.
+  private final TokenizerFactory<CoreLabel> tokenizerFactory = 
+          PTBTokenizer.factory(new CoreLabelTokenFactory(), "");
+  // stems of recently seen words, shared by all threads.
+  private volatile StemCache stems = new StemCache();
   
   // stores known entities (from dictionaries) of 1-word length.
-  private Set<String> singleKnownEntities = new HashSet<String>();
+  private Lexicon singleKnownEntities;
   // stores all kinds of known entities (from dictionaries)
-  private Set<String> allKnownEntities = new HashSet<String>();
+  private Lexicon allKnownEntities;
   // stores a full English word list which contains about 180,000 English words 
-  private Set<String> fullDictionary = new HashSet<String>();
+  private Lexicon fullDictionary;
   // stores 'common words' which refer to those unlikely to be gene names. e.g. those appear in fictions.
-  private Set<String> commonWords = new HashSet<String>();
-  // stores the results (gene name entities) by MyAnnotation, which is used as a middle structure between 
-  // the algorithms and UIMA framework.
-  private ArrayList<MyAnnotation> entities = new ArrayList<MyAnnotation>();
-  private int entityID = 0;
+  private Lexicon commonWords;
+  // stores the gene terms of several words as a token trie over allKnownEntities.
+  private PhraseTrie phrases;
+  
+  // when set, a line is POS tagged only if it has a candidate whose acceptance depends on its tag.
+  private volatile boolean lazyPosTagging = true;
+  // number of lines that were POS tagged, and of lines whose tagging was skipped.
+  private final AtomicLong linesTagged = new AtomicLong();
+  private final AtomicLong linesSkipped = new AtomicLong();
+  // counters and stage latencies shared by the pipeline
+  private final Metrics metrics = Metrics.get();
+  // entities of recently seen line bodies (the line without its sentence ID), shared by all threads.
+  private volatile ConcurrentLruCache<String, LineEntities> lineCache = 
+          new ConcurrentLruCache<String, LineEntities>(0);
+  // most lines of a document recognized by one fork-join task, 0 meaning documents are not split.
+  private volatile int parallelChunkLines = 0;
+  // workers recognizing the chunks of split documents, started with the first one and shared by all
+  // recognizers. They are daemon threads, so the pool never needs to be shut down.
+  private static ForkJoinPool chunkPool;
   
   EntityRecognizer(){
     
   }
   
   /**
-   * calling after initialize() and recognizeEntities(String inputStr), return the analysis results
-   * @return gene name entities, each of which is stored by a MyAnnotation instance.
+   * choose between tagging every line (false) and tagging only lines with ambiguous candidates (true,
+   * the default). Both give the same entities.
+   */
+  public void setLazyPosTagging(boolean lazy){
+    this.lazyPosTagging = lazy;
+  }
+  
+  public boolean isLazyPosTagging(){
+    return lazyPosTagging;
+  }
+  
+  /**
+   * replace the stem cache by an empty one holding at most size stems (0 disables caching).
+   */
+  public void setStemCacheSize(int size){
+    this.stems = new StemCache(size);
+  }
+  
+  /**
+   * @return the stem cache, for its hit statistics.
+   */
+  public StemCache getStemCache(){
+    return stems;
+  }
+  
+  /**
+   * replace the line cache by an empty one holding the entities of at most size line bodies (0, the
+   * default, disables it). Lines repeating the text of a cached line after their sentence ID reuse its
+   * entities, moved to their own sentence ID, instead of being tokenized, looked up and tagged again.
+   * The sentence ID is part of the context the POS tagger sees, so in rare cases a cached line can keep
+   * an entity that tagging the line again would have dropped (or the reverse).
+   */
+  public void setLineCacheSize(int size){
+    this.lineCache = new ConcurrentLruCache<String, LineEntities>(size);
+  }
+  
+  /**
+   * @return the line cache, for its size and hit statistics.
+   */
+  public ConcurrentLruCache<String, LineEntities> getLineCache(){
+    return lineCache;
+  }
+  
+  /**
+   * split documents of more than size lines into chunks of at most size lines, recognized in parallel
+   * on a fork-join pool with a worker per core; 0 (the default) recognizes every document on the calling
+   * thread. The entities, their order and their IDs are the same either way, since lines are analyzed
+   * independently and the chunks are put back in line order before the entities are numbered. This
+   * lowers the latency of single large documents; when the pipeline already runs a thread per core it
+   * mostly adds overhead.
+   */
+  public void setParallelChunkLines(int size){
+    this.parallelChunkLines = size;
+  }
+  
+  public int getParallelChunkLines(){
+    return parallelChunkLines;
+  }
+  
+  /**
+   * bound the POS models loaded by the JVM to max, e.g. to the number of threads processing documents.
+   * A thread that needs a tagger while max other threads are tagging waits for one of them. The default
+   * is one per core. Lowering the bound drops idle models right away and busy ones once they are done.
+   */
+  public static void setMaxPosTaggers(int max){
+    PosTagger.getPool().setLimit(max);
+  }
+  
+  public static int getMaxPosTaggers(){
+    return PosTagger.getPool().getLimit();
+  }
+  
+  /**
+   * @return number of lines that have been POS tagged so far.
    */
-  public ArrayList<MyAnnotation> getEntities(){
-    return entities;
+  public long getLinesTagged(){
+    return linesTagged.get();
+  }
+  
+  /**
+   * @return number of lines that did not need POS tagging so far.
+   */
+  public long getLinesSkipped(){
+    return linesSkipped.get();
   }
   
   /**
    * first-called method after an EntityRecognizer instance is created.
-   * load all kinds of dictionaries and do all kinds of preprocessing.
+   * map the precompiled dictionary snapshot from its default location, compiling it on the first run.
    */
   public void initialize(){
-    loadKnownEntities(GENE_TERM_DIC);
-    loadDictionary(FULL_WORDS);
+    initialize(DictionarySnapshot.defaultLocation());
+  }
   
-    loadForbiddenWords(COMMON_WORDS);
-    loadForbiddenWords(CORPUS);
-    loadForbiddenWords(FULL_WORDS, allKnownEntities);
+  /**
+   * overloaded version of initialize(). The dictionaries are mapped from the given snapshot file,
+   * which is (re)compiled by DictionaryCompiler if it is missing or out of date.
+   * @param snapshot the dictionary snapshot file.
+   */
+  public void initialize(File snapshot){
+    initialize(DictionaryResource_impl.load(snapshot));
+  }
+  
+  /**
+   * overloaded version of initialize(). The dictionaries are shared with other recognizers, e.g. when
+   * they come from the DictionaryResource bound to the annotator.
+   * @param dic the dictionary snapshot.
+   */
+  public void initialize(DictionarySnapshot dic){
+    singleKnownEntities = dic.getSingleKnownEntities();
+    allKnownEntities = dic.getAllKnownEntities();
+    fullDictionary = dic.getFullDictionary();
+    commonWords = dic.getCommonWords();
+    phrases = dic.getPhrases();
   }
   
   /**
    * each calling to this method leads to a thoroughly analysis towards the inputStr.
    * @param inputStr loaded from an input text, which is usually the entire formatted text gotten by 
    * collection reader.
+   * @return gene name entities in processing order, each of which is stored by a MyAnnotation instance
+   * whose ID is its 1-based position in the list.
+   * @throws RuntimeException if a line cannot be recognized, e.g. when the POS model cannot be loaded;
+   * the entities of the other lines are not returned then, so a document never silently loses some.
    */
-  public void recognizeEntities(String inputStr){
-    this.clear();
+  public ArrayList<MyAnnotation> recognizeEntities(String inputStr){
+    int chunkLines = parallelChunkLines;
+    if(chunkLines > 0)
+      return recognizeInChunks(inputStr, chunkLines);
     
-    try{
-      Scanner sc = new Scanner(inputStr);
-      while(sc.hasNextLine()){
-        String line = sc.nextLine();
-        parseLine(line);
-      }
-      
-      sc.close();
-      
+    DocumentAnalysis doc = new DocumentAnalysis();
+    ConcurrentLruCache<String, LineEntities> cache = lineCache;
+    
+    Scanner sc = new Scanner(inputStr);
+    while(sc.hasNextLine()){
+      String line = sc.nextLine();
+      analyzeLine(line, doc, cache);
     }
-    catch(Exception e){
-      System.out.println("No such file found!");
+    
+    sc.close();
+    
+    return doc.finish();
+  }
+  
+  /*
+   * recognizeEntities() of the parallel mode: the lines are split the same way Scanner does it for the
+   * sequential mode, then analyzed in chunks of at most chunkLines lines. invoke() rethrows the failure
+   * of any chunk, so the document fails as a whole, as in the sequential mode.
+   */
+  private ArrayList<MyAnnotation> recognizeInChunks(String inputStr, int chunkLines){
+    ArrayList<String> lines = new ArrayList<String>();
+    Scanner sc = new Scanner(inputStr);
+    while(sc.hasNextLine())
+      lines.add(sc.nextLine());
+    sc.close();
+    
+    LineChunk all = new LineChunk(lines, 0, lines.size(), chunkLines, lineCache);
+    DocumentAnalysis doc = lines.size() <= chunkLines ? all.compute() : chunkPool().invoke(all);
+    return doc.finish();
+  }
+  
+  private static synchronized ForkJoinPool chunkPool(){
+    if(chunkPool == null){
+      chunkPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), 
+              new ForkJoinPool.ForkJoinWorkerThreadFactory(){
+                public ForkJoinWorkerThread newThread(ForkJoinPool pool){
+                  ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                  t.setName("kex-chunk-" + t.getPoolIndex());
+                  t.setDaemon(true);
+                  return t;
+                }
+              }, null, false);
     }
+    return chunkPool;
   }
   
   /**
    * overloaded version of recognizeEntities(String inputStr). The parameter is a File instance rather than
    * a String.
    * @param inputFile indicates the File instance which is to be analyzed.
+   * @return gene name entities in processing order.
    */
-  public void recognizeEntities(File inputFile){
-    this.clear();
+  public ArrayList<MyAnnotation> recognizeEntities(File inputFile){
+    DocumentAnalysis doc = new DocumentAnalysis();
     
     try{
       Scanner sc = new Scanner(inputFile);
       while(sc.hasNextLine()){
         String line = sc.nextLine();
-        parseLine(line);
+        parseLine(line, doc);
       }
       
       sc.close();
     }
-    catch(Exception e){
+    catch(FileNotFoundException e){
       System.out.println("No such file found!");
     }
+    
+    return doc.finish();
   }
   
   /**
    * print the analyzed results to file indicated by output parameter.
+   * @param entities results of recognizeEntities().
    * @param output
    */
-  protected void printEntities(String output){
+  protected void printEntities(List<MyAnnotation> entities, String output){
     try{
       PrintWriter pw = new PrintWriter(new File(output));
       for(MyAnnotation ann : entities){
@@ -138,132 +294,81 @@ public class EntityRecognizer{
     }
   }
   
-  /*
-   * restore all members to initial status.
-   */
-  private void clear(){
-    this.entities.clear();
-  }
-  
-  /*
-   * load known names from a gene name dictionary
-   */
-  private void loadKnownEntities(String dic){
-    try{
-      BufferedReader reader = new BufferedReader(
-              new InputStreamReader(this.getClass().getResourceAsStream(dic))
-              );
-      String line = "";
-      while( ( line = reader.readLine() ) != null ){
-        String [] terms  = line.split(" ");
-        for(String t : terms)
-          allKnownEntities.add(t.toLowerCase());
-        
-        singleKnownEntities.add(terms[0]);
-      }
-      
-      reader.close();
-    }
-    catch(Exception e){
-      System.out.println("No such file found!");
+  private boolean isAllLetters(String token){
+    for(int i=0; i<token.length(); i++){
+      char c = token.charAt(i);
+      if(!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')))
+        return false;
     }
+    return true;
   }
   
   /*
-   * load English words from full words dictionary
+   * parseLine() through the line cache: when the same text followed another sentence ID recently, its
+   * entities are copied onto the sentence ID of line instead. Only lines starting with a plain ID (ASCII
+   * letters and digits, which the tokenizer keeps as a single token) are cached, so that the body always
+   * begins right after token[0]. The entities of a parsed line are cached at once, so later lines of the
+   * same document already find them.
    */
-  private void loadDictionary(String dic){
-    Morphology mor = new Morphology();
-    
-    InputStream stream = this.getClass().getResourceAsStream(dic);
-    try{
-      Scanner sc = new Scanner(stream);
-      while(sc.hasNext()){
-        String line = sc.next();
-        fullDictionary.add(line);
-        fullDictionary.add(mor.stem(line));
-      }
-      
-      stream.close();
-      sc.close();
-    }
-    catch(Exception e){
-      System.out.println("No such file found!");
+  private void analyzeLine(String line, DocumentAnalysis doc, ConcurrentLruCache<String, LineEntities> cache){
+    if(cache.getCapacity() == 0){
+      parseLine(line, doc);
+      return;
     }
-  }
-  
-  /*
-   * load words that are unlikely to appear to be a gene name
-   */
-  private void loadForbiddenWords(String file){
-    try{
-      Morphology mor = new Morphology();
-      
-      InputStream stream = this.getClass().getResourceAsStream(file);
-      Scanner sc = new Scanner(stream);
-      while(sc.hasNext()){
-        String token = sc.next().trim();
-         commonWords.add(token);
-         commonWords.add(mor.stem(token)); 
-      }
-      
-      stream.close();
-      sc.close();
+    
+    int start = 0;
+    while(start < line.length() && Character.isWhitespace(line.charAt(start)))
+      start++;
+    int end = start;
+    while(end < line.length() && isPlainIdChar(line.charAt(end)))
+      end++;
+    if(end == start || (end < line.length() && !Character.isWhitespace(line.charAt(end)))){
+      parseLine(line, doc);
+      return;
     }
-    catch(Exception e){
-      System.out.println("No such file found!");
+    
+    String id = line.substring(start, end);
+    String body = line.substring(end).trim();
+    LineEntities cached = cache.get(body);
+    if(cached != null){
+      doc.lines++;
+      for(MyAnnotation ann : cached.rebase(id))
+        doc.add(ann);
+      return;
     }
+    
+    List<MyAnnotation> entities = doc.entities;
+    int first = entities.size();
+    parseLine(line, doc);
+    cache.put(body, new LineEntities(entities.subList(first, entities.size())));
   }
   
-  /*
-   * load words that are unlikely to appear to be a gene name, except when the words are already in dic.
-   */
-  private void loadForbiddenWords(String file, Set<String> dic){
-    try{
-      InputStream stream = this.getClass().getResourceAsStream(file);
-      Scanner sc = new Scanner(stream);
-      while(sc.hasNext()){
-        String token = sc.next().trim();
-        
-        if(!dic.contains(token))
-          commonWords.add(token);
-      }
-      
-      stream.close();
-      sc.close();
-    }
-    catch(Exception e){
-      System.out.println("No such file found!");
-    }
-  }
-   
-  private boolean isAllLetters(String token){
-    for(int i=0; i<token.length(); i++){
-      char c = token.charAt(i);
-      if(!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')))
-        return false;
-    }
-    return true;
+  private static boolean isPlainIdChar(char c){
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
   }
   
   /*
    * mainly recognization routine, including stemming, part-of-speech tagging, recognizing continuous words
-   * and sotring recognization results.
+   * and sotring recognization results into the entities of doc, along with the statistics of the line.
    */
-  private void parseLine(String line){
-    // POS
-    posTagger.recognizePos(line);
+  private void parseLine(String line, DocumentAnalysis doc){
+    // tokenize once, the same tokens (with their character offsets) feed both the POS tagger and
+    // the candidate detection below.
+    long start = System.nanoTime();
+    List<CoreLabel> words = tokenizerFactory.getTokenizer(new StringReader(line)).tokenize();
+    long tokenized = System.nanoTime();
+    long posNanos = doc.posNanos;
     
-    // tokenize 
-    TokenizerFactory<Word> factory = PTBTokenizerFactory.newTokenizerFactory();
-    Tokenizer<Word> tokenizer = factory.getTokenizer(new StringReader(line));
-    List<Word> words = tokenizer.tokenize();
+    // POS, which is postponed until a candidate needs it in lazy mode.
+    Map<String, String> posDic = null;
+    if(!lazyPosTagging)
+      posDic = tag(words, doc);
     
     // stem
-    Morphology mor = new Morphology();     
+    StemCache mor = stems;
     ArrayList<String> tokens = new ArrayList<String>();
-    for(Word word : words){
-      tokens.add(word.toString());
+    for(CoreLabel word : words){
+      tokens.add(word.word());
     }
     
     
@@ -271,12 +376,21 @@ public class EntityRecognizer{
     int curLen = 0;
     while(i < tokens.size()){
       String ti = tokens.get(i);
-      String tiLow = ti.toLowerCase();
       
-      if(!isValidToken(tokens.get(i)) || 
-              (!allKnownEntities.contains(tiLow) && !isAllUpperCase(ti)) || 
-                commonWords.contains(tiLow) || 
-                  commonWords.contains(mor.stem(tiLow))){ 
+      // end of the longest gene term of several words starting at token i, if any
+      int phraseEnd = matchPhrase(tokens, i);
+      
+      // lexicons are probed with the lower case form of the token without copying it; only the
+      // stemmer needs the lower case String.
+      boolean valid = isValidToken(ti);
+      boolean known = valid && allKnownEntities.containsLowerCase(ti);
+      if(known)
+        doc.dictionaryHits++;
+      boolean candidate = !(!valid || 
+              (!known && !isAllUpperCase(ti)) || 
+                commonWords.containsLowerCase(ti) || 
+                  commonWords.contains(mor.stem(ti.toLowerCase())));
+      if(!candidate && phraseEnd < 0){ 
         curLen += tokens.get(i).length();
         i++;
         continue;
@@ -284,19 +398,24 @@ public class EntityRecognizer{
       
       boolean multicase = false;
       int j = i + 1;
-      for(; j < tokens.size(); j++){
+      for(; candidate && j < tokens.size(); j++){
         String tj = tokens.get(j);
-        String tjLow = tj.toLowerCase();
         
         if( isValidToken(tj) && 
-                ( allKnownEntities.contains(tjLow) || isAllUpperCase(tj)) &&
-                  !commonWords.contains(tjLow) &&
-                    !commonWords.contains(mor.stem(tjLow)))
+                ( allKnownEntities.containsLowerCase(tj) || isAllUpperCase(tj)) &&
+                  !commonWords.containsLowerCase(tj) &&
+                    !commonWords.contains(mor.stem(tj.toLowerCase())))
           multicase = true;
         else
           break;
       }
       
+      // a known term keeps its words together even when some of them would not pass the filter above
+      if(phraseEnd > j){
+        j = phraseEnd;
+        multicase = true;
+      }
+      
       // merge token [i - j)
       StringBuilder name = new StringBuilder();
       int len = 0;
@@ -313,35 +432,178 @@ public class EntityRecognizer{
       ann.setBegin(curLen);
       ann.setEnd(curLen + len - 1);
       ann.setName(name.toString());
-      ann.setID(++this.entityID);
       
      
-      if(multicase)
-        entities.add(ann);
+      boolean accepted = false;
+      if(multicase){
+        doc.candidates++;
+        accepted = true;
+      }
       else{
         if(singleKnownEntities.contains(ann.getName()) && !commonWords.contains(ann.getName())){
+          doc.candidates++;
           if(!fullDictionary.contains(ann.getName()) && !fullDictionary.contains(mor.stem(ann.getName())))
-            entities.add(ann);
-          else
-            if(posTagger.getPosDictionary().get(ann.getName().trim()) != null)  // only add noun.
-              entities.add(ann);
+            accepted = true;
+          else{
+            if(posDic == null)
+              posDic = tag(words, doc);
+            if(posDic.get(ann.getName().trim()) != null)  // only add noun.
+              accepted = true;
+          }
         }
       }
+      
+      if(accepted)
+        doc.add(ann);
      
       curLen += len;
       i = j;
     }
     
+    if(posDic != null){
+      linesTagged.incrementAndGet();
+      doc.tagged++;
+    }
+    else{
+      linesSkipped.incrementAndGet();
+      doc.skipped++;
+    }
+    
+    doc.lines++;
+    doc.tokens += tokens.size();
+    doc.tokenizeNanos += tokenized - start;
+    // the time spent in the tagger is counted as POS, not as matching
+    doc.matchNanos += System.nanoTime() - tokenized - (doc.posNanos - posNanos);
+  }
+  
+  private Map<String, String> tag(List<CoreLabel> words, DocumentAnalysis doc){
+    long start = System.nanoTime();
+    Map<String, String> posDic = posTagger.recognizePos(words);
+    doc.posNanos += System.nanoTime() - start;
+    return posDic;
+  }
+  
+  /*
+   * the entities of one document, numbered in the order they are added, and the statistics of their
+   * recognition. finish() adds the statistics to the metrics once per document, so that the hot path
+   * does not touch the shared counters per token or line.
+   */
+  private class DocumentAnalysis {
+    private final ArrayList<MyAnnotation> entities = new ArrayList<MyAnnotation>();
+    
+    // per document statistics, added to the metrics by finish()
+    private long lines, tokens, dictionaryHits, candidates, tokenizeNanos, matchNanos, posNanos, tagged, skipped;
+    
+    void add(MyAnnotation ann){
+      ann.setID(entities.size() + 1);
+      entities.add(ann);
+    }
+    
+    /*
+     * append the entities of other, a following chunk of the same document, numbering them on.
+     */
+    void addAll(DocumentAnalysis other){
+      for(MyAnnotation ann : other.entities)
+        add(ann);
+      lines += other.lines;
+      tokens += other.tokens;
+      dictionaryHits += other.dictionaryHits;
+      candidates += other.candidates;
+      tokenizeNanos += other.tokenizeNanos;
+      matchNanos += other.matchNanos;
+      posNanos += other.posNanos;
+      tagged += other.tagged;
+      skipped += other.skipped;
+    }
+    
+    ArrayList<MyAnnotation> finish(){
+      metrics.add(Metrics.LINES, lines);
+      metrics.add(Metrics.TOKENS, tokens);
+      metrics.add(Metrics.DICTIONARY_HITS, dictionaryHits);
+      metrics.add(Metrics.CANDIDATES, candidates);
+      metrics.add(Metrics.ENTITIES, entities.size());
+      metrics.add(Metrics.POS_LINES, tagged);
+      metrics.add(Metrics.POS_SKIPPED_LINES, skipped);
+      metrics.record(Metrics.TOKENIZE, tokenizeNanos);
+      metrics.record(Metrics.MATCH, matchNanos);
+      if(tagged > 0)
+        metrics.record(Metrics.POS, posNanos);
+      return entities;
+    }
+  }
+  
+  /*
+   * analyzes the lines [from, to) of a document, halving the range until it has at most chunkLines
+   * lines. The halves are joined in order, so the result holds the entities in document order.
+   */
+  private class LineChunk extends RecursiveTask<DocumentAnalysis> {
+    private static final long serialVersionUID = 1L;
+    
+    private final List<String> lines;
+    private final int from, to, chunkLines;
+    private final ConcurrentLruCache<String, LineEntities> cache;
+    
+    LineChunk(List<String> lines, int from, int to, int chunkLines, ConcurrentLruCache<String, LineEntities> cache){
+      this.lines = lines;
+      this.from = from;
+      this.to = to;
+      this.chunkLines = chunkLines;
+      this.cache = cache;
+    }
+    
+    protected DocumentAnalysis compute(){
+      if(to - from <= chunkLines){
+        DocumentAnalysis doc = new DocumentAnalysis();
+        for(int k = from; k < to; k++)
+          analyzeLine(lines.get(k), doc, cache);
+        return doc;
+      }
+      
+      int mid = (from + to) >>> 1;
+      LineChunk second = new LineChunk(lines, mid, to, chunkLines, cache);
+      second.fork();
+      DocumentAnalysis doc = new LineChunk(lines, from, mid, chunkLines, cache).compute();
+      doc.addAll(second.join());
+      return doc;
+    }
+  }
+  
+  /*
+   * longest-match lookup of tokens[i..] in the phrase trie. Returns the index after the last token
+   * of the longest gene term of at least two words starting at i, or -1 if there is none.
+   */
+  private int matchPhrase(List<String> tokens, int i){
+    int end = -1;
+    int node = PhraseTrie.ROOT;
+    for(int k = i; k < tokens.size(); k++){
+      node = phrases.child(node, allKnownEntities.indexOfLowerCase(tokens.get(k)));
+      if(node < 0)
+        break;
+      if(phrases.isTerminal(node) && k > i)
+        end = k + 1;
+    }
+    return end;
   }
   
   private boolean isValidToken(String context){
-    if(context.matches("[,.?:;'{}!*+-=_]") || 
+    if(isPunctuation(context) || 
                  isNumber(context) || hasNoLetter(context) || 
                  (context.charAt(0) == '-' && context.charAt(context.length()-1) == '-'))
       return false;
     return true;
   }
 
+  /*
+   * same as context.matches("[,.?:;'{}!*+-=_]") (note the range '+' to '='), without compiling the
+   * pattern for every token.
+   */
+  private boolean isPunctuation(String context){
+    if(context.length() != 1)
+      return false;
+    char c = context.charAt(0);
+    return (c >= '+' && c <= '=') || ",.?:;'{}!*_".indexOf(c) >= 0;
+  }
+  
   private boolean isNumber(String context){
     for(int i = 0; i < context.length(); i++){
       char c = context.charAt(i);
@@ -442,37 +704,156 @@ public int compareTo(MyAnnotation o) {
 }
 
 /*
- * internal used for better recognizing gene names.
+ * the entities of one line, without its sentence ID, as kept by the line cache. Immutable, so it can
+ * be shared by threads; rebase() makes the annotations for a line with the same body.
  */
-class PosTagger {
+class LineEntities {
+private final int [] begins;
+private final int [] ends;
+private final String [] names;
 
-private StanfordCoreNLP pipeline;
-private Map<String, String> posDic = new HashMap<String, String>();
+LineEntities(List<MyAnnotation> entities){
+ begins = new int[entities.size()];
+ ends = new int[entities.size()];
+ names = new String[entities.size()];
+ for(int k = 0; k < names.length; k++){
+   MyAnnotation ann = entities.get(k);
+   begins[k] = ann.getBegin();
+   ends[k] = ann.getEnd();
+   names[k] = ann.getName();
+ }
+}
 
-public Map<String, String> getPosDictionary(){
- return posDic;
+public List<MyAnnotation> rebase(String sentenceID){
+ List<MyAnnotation> entities = new ArrayList<MyAnnotation>(names.length);
+ for(int k = 0; k < names.length; k++){
+   MyAnnotation ann = new MyAnnotation();
+   ann.setSentenceID(sentenceID);
+   ann.setBegin(begins[k]);
+   ann.setEnd(ends[k]);
+   ann.setName(names[k]);
+   entities.add(ann);
+ }
+ return entities;
 }
+}
+
+/*
+ * internal used for better recognizing gene names. It tags tokens produced by the recognizer itself,
+ * splitting them into sentences the same way the CoreNLP 'ssplit' annotator does. MaxentTagger is not
+ * documented to be thread-safe, so a tagger is used by one thread at a time: every call borrows one
+ * from a pool shared by all PosTagger instances of the JVM and returns it afterwards. The pool loads
+ * at most as many models as threads may tag at once (one per core unless set otherwise), however many
+ * threads tag over time.
+ */
+class PosTagger {
+
+private static final TaggerPool taggers = new TaggerPool(Runtime.getRuntime().availableProcessors());
+
+private final WordToSentenceProcessor<CoreLabel> splitter = new WordToSentenceProcessor<CoreLabel>();
 
+/*
+ * loads the first tagger of the pool, so that a missing model is reported right away.
+ */
 public PosTagger(){
- Properties props = new Properties();
- props.put("annotators", "tokenize, ssplit, pos");
- pipeline = new StanfordCoreNLP(props);
+ taggers.release(taggers.borrow());
+}
+
+static TaggerPool getPool(){
+ return taggers;
+}
+
+
+/*
+ * tag the tokens of a line and return its nouns, mapping each noun word to its POS tag.
+ */
+public Map<String, String> recognizePos(List<CoreLabel> tokens) {
+ Map<String, String> posDic = new HashMap<String, String>();
+ MaxentTagger tagger = taggers.borrow();
+ try{
+   for (List<CoreLabel> sentence : splitter.process(tokens)) {
+     for (TaggedWord token : tagger.tagSentence(sentence)) {
+       String pos = token.tag();
+       if (pos.startsWith("NN")) 
+         posDic.put(token.word(), pos);
+     }
+   }
+ }
+ finally{
+   taggers.release(tagger);
+ }
+ return posDic;
+}
 }
 
+/*
+ * internal used to share at most getLimit() taggers between threads. borrow() takes an idle tagger,
+ * loads a new one while fewer than the limit exist, or else waits until another thread returns one.
+ */
+class TaggerPool {
+private final ArrayDeque<MaxentTagger> idle = new ArrayDeque<MaxentTagger>();
+private int limit;
+private int size;  // taggers loaded and not dropped, whether idle or borrowed
 
-public void recognizePos(String text) {
- posDic.clear();
+TaggerPool(int limit){
+ this.limit = Math.max(1, limit);
+}
+
+public MaxentTagger borrow(){
+ synchronized(this){
+   while(idle.isEmpty() && size >= limit){
+     try{
+       wait();
+     }
+     catch(InterruptedException e){
+       Thread.currentThread().interrupt();
+       throw new IllegalStateException("Interrupted while waiting for a POS tagger", e);
+     }
+   }
+   if(!idle.isEmpty())
+     return idle.pop();
+   size++;
+ }
  
- Annotation document = new Annotation(text);
- pipeline.annotate(document);
- List<CoreMap> sentences = document.get(SentencesAnnotation.class);
- for (CoreMap sentence : sentences) {
-   for (CoreLabel token : sentence.get(TokensAnnotation.class)) {
-     String pos = token.get(PartOfSpeechAnnotation.class);
-     if (pos.startsWith("NN")) 
-       posDic.put(token.toString(), pos);
+ // loading a model takes a while, so the other threads are not held up meanwhile
+ try{
+   return new MaxentTagger(DefaultPaths.DEFAULT_POS_MODEL);
+ }
+ catch(Exception e){
+   synchronized(this){
+     size--;
+     notifyAll();
    }
+   throw new IllegalStateException("Cannot load POS model " + DefaultPaths.DEFAULT_POS_MODEL, e);
  }
 }
+
+public synchronized void release(MaxentTagger tagger){
+ if(size > limit)
+   size--;  // the limit was lowered, so the tagger is dropped
+ else
+   idle.push(tagger);
+ notifyAll();
+}
+
+/*
+ * idle taggers beyond the new limit are dropped right away, borrowed ones when they are returned.
+ */
+public synchronized void setLimit(int limit){
+ this.limit = Math.max(1, limit);
+ while(size > this.limit && !idle.isEmpty()){
+   idle.pop();
+   size--;
+ }
+ notifyAll();
+}
+
+public synchronized int getLimit(){
+ return limit;
+}
+
+public synchronized int size(){
+ return size;
+}
 }
 
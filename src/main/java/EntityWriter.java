@@ -0,0 +1,186 @@
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The EntityWriter class appends gene name entities to one output file, in the text format (a
+ * "sentenceID|begin end|name" line per entity) or the binary format read back by EntityReader.
+ * The file is buffered and flushed every flushBatchSize entities (only when closed if flushBatchSize
+ * is 0). It is not thread-safe: a consumer writing a document synchronizes on the writer for the whole
+ * document, so that the entities of a document stay together when replicas share it.
+ * 
+ * @author xuke
+ *
+ */
+public abstract class EntityWriter {
+  /* names of the output formats, see the OutputFormat parameter of GeneNameConsumer.xml */
+  public static final String FORMAT_TEXT = "text";
+  public static final String FORMAT_BINARY = "binary";
+  
+  static final int BUFFER_SIZE = 64 * 1024;
+  
+  private final File file;
+  private final int flushBatchSize;
+  private int unflushed;
+  private boolean closed;
+  
+  protected EntityWriter(File file, int flushBatchSize){
+    this.file = file;
+    this.flushBatchSize = Math.max(0, flushBatchSize);
+  }
+  
+  /**
+   * open (and truncate) file for writing entities in format.
+   * @param encoding charset of a text file, the system default if null or empty. Binary files are
+   * always UTF-8.
+   */
+  public static EntityWriter open(File file, String format, String encoding, int flushBatchSize) 
+          throws IOException{
+    if(format == null || format.trim().length() == 0 || FORMAT_TEXT.equalsIgnoreCase(format.trim()))
+      return new TextEntityWriter(file, encoding, flushBatchSize);
+    if(FORMAT_BINARY.equalsIgnoreCase(format.trim()))
+      return new BinaryEntityWriter(file, flushBatchSize);
+    throw new IOException("Unknown output format " + format);
+  }
+  
+  public File getFile(){
+    return file;
+  }
+  
+  public void write(String sentenceID, int begin, int end, String name) throws IOException{
+    if(closed)
+      throw new IOException("Output file " + file + " is already closed");
+    
+    writeEntity(sentenceID, begin, end, name.trim());
+    
+    if(flushBatchSize > 0 && ++unflushed >= flushBatchSize){
+      flush();
+      unflushed = 0;
+    }
+  }
+  
+  public void close() throws IOException{
+    if(!closed){
+      closed = true;
+      closeFile();
+    }
+  }
+  
+  protected abstract void writeEntity(String sentenceID, int begin, int end, String name) throws IOException;
+  
+  protected abstract void flush() throws IOException;
+  
+  protected abstract void closeFile() throws IOException;
+}
+
+
+/*
+ * one "sentenceID|begin end|name" line per entity.
+ */
+class TextEntityWriter extends EntityWriter {
+private final Writer writer;
+
+TextEntityWriter(File file, String encoding, int flushBatchSize) throws IOException{
+ super(file, flushBatchSize);
+ FileOutputStream out = new FileOutputStream(file);
+ if(encoding != null && encoding.trim().length() > 0)
+   writer = new BufferedWriter(new OutputStreamWriter(out, encoding.trim()), BUFFER_SIZE);
+ else
+   writer = new BufferedWriter(new OutputStreamWriter(out), BUFFER_SIZE);
+}
+
+protected void writeEntity(String sentenceID, int begin, int end, String name) throws IOException{
+ writer.write(sentenceID);
+ writer.write('|');
+ 
+ writer.write(Integer.toString(begin));
+ writer.write(' ');
+ writer.write(Integer.toString(end));
+ writer.write('|');
+ 
+ writer.write(name);
+ writer.write('\n');
+}
+
+protected void flush() throws IOException{
+ writer.flush();
+}
+
+protected void closeFile() throws IOException{
+ writer.close();
+}
+}
+
+/*
+ * the binary format: the MAGIC and VERSION ints and the size limit of the name table, then a record per
+ * entity made of unsigned varints:
+ *   sentence  0 if the sentence ID is the one of the previous record, otherwise its UTF-8 length + 1
+ *             followed by the bytes;
+ *   name      index + 1 of the name in the name table, or 0 followed by the UTF-8 length and bytes of a
+ *             name seen for the first time, which is then appended to the table (while it is not full);
+ *   begin     the begin offset;
+ *   length    end - begin.
+ * Entities of one sentence usually follow each other and names repeat, so most records take a few bytes.
+ */
+class BinaryEntityWriter extends EntityWriter {
+static final int MAGIC = 0x4b455845; // "KEXE"
+static final int VERSION = 1;
+// names beyond this many distinct ones are written in full, which bounds the memory of writer and reader
+static final int MAX_NAMES = 1 << 20;
+
+private final DataOutputStream out;
+private final Map<String, Integer> names = new HashMap<String, Integer>();
+private String lastSentenceID;
+
+BinaryEntityWriter(File file, int flushBatchSize) throws IOException{
+ super(file, flushBatchSize);
+ out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+ out.writeInt(MAGIC);
+ out.writeInt(VERSION);
+ out.writeInt(MAX_NAMES);
+}
+
+protected void writeEntity(String sentenceID, int begin, int end, String name) throws IOException{
+ if(sentenceID.equals(lastSentenceID)){
+   writeVarint(0);
+ }
+ else{
+   byte [] bytes = sentenceID.getBytes("UTF-8");
+   writeVarint(bytes.length + 1);
+   out.write(bytes);
+   lastSentenceID = sentenceID;
+ }
+ 
+ Integer ref = names.get(name);
+ if(ref != null){
+   writeVarint(ref + 1);
+ }
+ else{
+   writeVarint(0);
+   byte [] bytes = name.getBytes("UTF-8");
+   writeVarint(bytes.length);
+   out.write(bytes);
+   if(names.size() < MAX_NAMES)
+     names.put(name, names.size());
+ }
+ 
+ writeVarint(begin);
+ writeVarint(end - begin);
+}
+
+private void writeVarint(int value) throws IOException{
+ while((value & ~0x7f) != 0){
+   out.write((value & 0x7f) | 0x80);
+   value >>>= 7;
+ }
+ out.write(value);
+}
+
+protected void flush() throws IOException{
+ out.flush();
+}
+
+protected void closeFile() throws IOException{
+ out.close();
+}
+}
@@ -1,6 +1,17 @@
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.CASException;
@@ -10,7 +21,6 @@ import org.apache.uima.jcas.JCas;
 import org.apache.uima.jcas.tcas.DocumentAnnotation;
 import org.apache.uima.resource.ResourceConfigurationException;
 import org.apache.uima.resource.ResourceInitializationException;
-import org.apache.uima.util.FileUtils;
 import org.apache.uima.util.Progress;
 import org.apache.uima.util.ProgressImpl;
 
@@ -18,6 +28,9 @@ import org.apache.uima.util.ProgressImpl;
  * The 'collection reader' component for CPE. 
  * It takes as input an entire text, which might contain multiple lines of formatted text,
  * and update the document text information in the input CAS instance, make it ready for the annotator.
+ * Upcoming files are read ahead on background threads (see Prefetcher), so that the CPE does not wait
+ * for the disk when it asks for the next CAS. Large files can be split into several CASes of a bounded
+ * number of lines; every CAS records its file and first line in a DocumentSegment annotation.
  *   
  * @author xuke
  *
@@ -27,11 +40,29 @@ public class FileCollectionReader extends CollectionReader_ImplBase {
   public static final String PARAM_INPUTDIR = "InputDirectory";
   public static final String PARAM_ENCODING = "Encoding";
   public static final String PARAM_LANGUAGE = "Language";
+  /* which files of the input directory are read, see FileWalker */
+  public static final String PARAM_SUBDIR = "BrowseSubdirectories";
+  public static final String PARAM_INCLUDES = "IncludePatterns";
+  public static final String PARAM_EXCLUDES = "ExcludePatterns";
+  public static final String PARAM_SKIP_HIDDEN = "SkipHiddenFiles";
+  /* read-ahead parameters: number of threads, number of files and bytes read ahead */
+  public static final String PARAM_PREFETCH_THREADS = "PrefetchThreads";
+  public static final String PARAM_PREFETCH_DEPTH = "PrefetchDepth";
+  public static final String PARAM_PREFETCH_MAX_BYTES = "PrefetchMaxBytes";
+  /* whether each read ahead runs on a virtual thread of its own, see VirtualThreads */
+  public static final String PARAM_PREFETCH_VIRTUAL = "PrefetchVirtualThreads";
+  /* size in bytes from which input files are memory-mapped, see DocumentLoader */
+  public static final String PARAM_MAP_THRESHOLD = "MapThresholdBytes";
+  /* maximum number of lines and characters of a CAS, splitting input files, see DocumentLoader */
+  public static final String PARAM_SEGMENT_LINES = "SegmentLines";
+  public static final String PARAM_SEGMENT_CHARS = "SegmentChars";
   
-  private ArrayList<File> mFiles;
-  private int mCurrentIdx;
+  private FileWalker mFiles;
+  private int mCurrentIdx;  // number of files completely read
   private String mEncoding;
   private String mLanguage;
+  private DocumentLoader mLoader;
+  private Prefetcher mPrefetcher;
   
   /**
    * acquire parameters and generate file text (as String)
@@ -45,23 +76,41 @@ public class FileCollectionReader extends CollectionReader_ImplBase {
               new Object[] { PARAM_INPUTDIR, this.getMetaData().getName(), file.getPath() });
     }
     
-    mFiles = new ArrayList<File>();
-    if(file.isFile()){
-      mFiles.add(file);
-    }else if(file.isDirectory()){
-      File [] files = file.listFiles();
-      for(File f : files)
-        mFiles.add(f);
-    }
+    // files are listed lazily, as getNext() (or the prefetcher) asks for them
+    Boolean recursive = (Boolean) getConfigParameterValue(PARAM_SUBDIR);
+    Boolean skipHidden = (Boolean) getConfigParameterValue(PARAM_SKIP_HIDDEN);
+    mFiles = new FileWalker(file, recursive != null && recursive, skipHidden == null || skipHidden, 
+            (String []) getConfigParameterValue(PARAM_INCLUDES), 
+            (String []) getConfigParameterValue(PARAM_EXCLUDES));
 
     mCurrentIdx = 0;
     // use the default platform encoding if mEncoding is null, with a maximum buffer of 10000 chars
     mEncoding =  (String)getConfigParameterValue(PARAM_ENCODING);
     mLanguage  = (String)getConfigParameterValue(PARAM_LANGUAGE);
+    
+    Integer mapThreshold = (Integer) getConfigParameterValue(PARAM_MAP_THRESHOLD);
+    try{
+      mLoader = new DocumentLoader(mEncoding, mapThreshold == null ? -1 : mapThreshold);
+    }
+    catch(IllegalArgumentException e){
+      // unknown or unsupported charset
+      throw new ResourceInitializationException(e);
+    }
+    Integer segmentLines = (Integer) getConfigParameterValue(PARAM_SEGMENT_LINES);
+    Integer segmentChars = (Integer) getConfigParameterValue(PARAM_SEGMENT_CHARS);
+    mLoader.setSegmentation(segmentLines == null ? 0 : segmentLines, segmentChars == null ? 0 : segmentChars);
+    
+    Integer threads = (Integer) getConfigParameterValue(PARAM_PREFETCH_THREADS);
+    Integer depth = (Integer) getConfigParameterValue(PARAM_PREFETCH_DEPTH);
+    Integer maxBytes = (Integer) getConfigParameterValue(PARAM_PREFETCH_MAX_BYTES);
+    Boolean virtual = (Boolean) getConfigParameterValue(PARAM_PREFETCH_VIRTUAL);
+    int t = threads == null ? 0 : Math.max(0, threads);
+    mPrefetcher = new Prefetcher(mFiles, mLoader, t, depth == null ? 2 * t : depth, 
+            maxBytes == null ? Integer.MAX_VALUE : maxBytes, virtual != null && virtual);
   }
   
   /**
-   * get the entire text ready for annotator
+   * get the entire text (or the next segment of it) ready for annotator
    * @override 
    */
   public void getNext(CAS aCAS) throws IOException, CollectionException {
@@ -72,11 +121,23 @@ public class FileCollectionReader extends CollectionReader_ImplBase {
       throw new CollectionException(e);
     }
     
-    // open input stream to file
-    File file = (File) mFiles.get(mCurrentIdx++);
-    String text = FileUtils.file2String(file, mEncoding);
+    // take the prefetched text of the file (or segment), or read it now
+    long start = System.nanoTime();
+    Segment segment = mPrefetcher.next();
+    Metrics.get().record(Metrics.READ, System.nanoTime() - start);
+    if(segment.isLast())
+      mCurrentIdx++;
     // put document in CAS
+    String text = segment.getText();
     jcas.setDocumentText(text);
+    
+    // record where the text comes from
+    DocumentSegment source = new DocumentSegment(jcas, 0, text.length());
+    source.setSourceFile(segment.getFile().getPath());
+    source.setFirstLine(segment.getFirstLine());
+    source.setSegmentIndex(segment.getIndex());
+    source.setLastSegment(segment.isLast());
+    source.addToIndexes();
 
     // set language if it was explicitly specified as a configuration parameter
     if (mLanguage != null) {
@@ -87,18 +148,222 @@ public class FileCollectionReader extends CollectionReader_ImplBase {
 
   @Override
   public void close() throws IOException {
-    // TODO Auto-generated method stub
-
+    mPrefetcher.close();
+    mFiles.close();
   }
 
   @Override
   public Progress[] getProgress() {
-    return new Progress[] { new ProgressImpl(mCurrentIdx, mFiles.size(), Progress.ENTITIES) };
+    // the total is an estimate until all directories have been read
+    int total = Math.max(mCurrentIdx, mFiles.estimateTotal());
+    return new Progress[] { new ProgressImpl(mCurrentIdx, total, Progress.ENTITIES) };
   }
 
   @Override
   public boolean hasNext() throws IOException, CollectionException {
-    return mCurrentIdx < mFiles.size();
+    return mPrefetcher.hasNext();
   }
 
 }
+
+
+/*
+ * reads the documents of a collection (whole files, or segments of files when the loader splits them)
+ * ahead of getNext() on a pool of daemon threads. Reads are started in collection order and handed out
+ * in the same order, and at most 'depth' documents and (roughly, by size) 'maxBytes' bytes are read
+ * ahead at any time, so memory stays bounded however fast the disk is. Without threads, documents are
+ * read on the calling thread when asked for. With virtual threads every read gets a thread of its own,
+ * so the depth alone limits how many reads overlap.
+ * 
+ * The segments of a file are read in order by one SegmentReader: each read waits for the read of the
+ * previous segment. The end of the file is only known once its last segment is read, so a read started
+ * after it finds nothing and is skipped.
+ */
+class Prefetcher {
+private static final AtomicInteger poolNumber = new AtomicInteger();
+
+private final Iterator<File> files;
+private final DocumentLoader loader;
+private final int depth;
+private final int maxBytes;
+private final ExecutorService pool;
+private final Semaphore bytes;
+// reads in progress or done but not yet taken, in collection order, with the permits each one holds
+private final Queue<Future<Segment>> pending = new ArrayDeque<Future<Segment>>();
+private final Queue<Integer> pendingBytes = new ArrayDeque<Integer>();
+private File nextFile;  // the next file to read ahead, already taken from files
+private SegmentReader segments;  // the file being split, if any
+private SegmentRead lastSegment;  // the latest read of its segments
+
+Prefetcher(Iterator<File> files, DocumentLoader loader, int threads, int depth, int maxBytes, boolean virtual){
+ this.files = files;
+ this.loader = loader;
+ this.depth = threads > 0 ? Math.max(1, depth) : 1;
+ this.maxBytes = Math.max(1, maxBytes);
+ this.bytes = new Semaphore(this.maxBytes);
+ 
+ if(threads > 0){
+   String name = "kex-prefetch-" + poolNumber.incrementAndGet();
+   pool = virtual ? VirtualThreads.newExecutor(name, threads)
+           : Executors.newFixedThreadPool(threads, VirtualThreads.daemonThreads(name));
+   fill();
+ }
+ else{
+   pool = null;
+ }
+}
+
+/*
+ * whether there is another document, waiting for the read of the next one to tell if needed.
+ */
+boolean hasNext(){
+ while(true){
+   fill();
+   Future<Segment> head = pending.peek();
+   if(head == null)
+     return false;
+   
+   try{
+     if(await(head) != null)
+       return true;
+   }
+   catch(IOException e){
+     return true;  // reported by next()
+   }
+   // a read past the end of a split file
+   pending.poll();
+   bytes.release(pendingBytes.poll());
+ }
+}
+
+/*
+ * the next document, waiting for its read to complete if needed.
+ */
+Segment next() throws IOException{
+ if(!hasNext())
+   throw new IOException("No more files to read");
+ 
+ Future<Segment> head = pending.poll();
+ try{
+   return await(head);
+ }
+ finally{
+   bytes.release(pendingBytes.poll());
+   if(pool != null)
+     fill();
+ }
+}
+
+void close(){
+ if(pool != null)
+   pool.shutdownNow();
+ pending.clear();
+ pendingBytes.clear();
+}
+
+private static Segment await(Future<Segment> read) throws IOException{
+ try{
+   return read.get();
+ }
+ catch(InterruptedException e){
+   Thread.currentThread().interrupt();
+   throw new IOException("Interrupted while reading ahead");
+ }
+ catch(ExecutionException e){
+   if(e.getCause() instanceof IOException)
+     throw (IOException) e.getCause();
+   throw new IOException(e.getCause());
+ }
+}
+
+/*
+ * start reading documents while the depth and byte limits allow. A document larger than the byte
+ * limit is counted as the limit, so it is read once nothing else is in flight.
+ */
+private void fill(){
+ while(pending.size() < depth){
+   if(segments != null && segments.isFinished()){
+     segments = null;
+     lastSegment = null;
+   }
+   if(segments == null && nextFile == null && files.hasNext())
+     nextFile = files.next();
+   
+   final File file = segments != null ? segments.getFile() : nextFile;
+   if(file == null)
+     return;
+   int cost = (int) Math.min(Math.max(loader.documentSize(file), 1), maxBytes);
+   if(!bytes.tryAcquire(cost))
+     return;
+   
+   FutureTask<Segment> read;
+   if(segments == null && !loader.isSplitting()){
+     read = new FutureTask<Segment>(new Callable<Segment>(){
+       public Segment call() throws IOException{
+         return new Segment(file, loader.load(file), 1, 0, true);
+       }
+     });
+     start(read);
+   }
+   else{
+     if(segments == null)
+       segments = loader.segments(file);
+     final SegmentReader reader = segments;
+     SegmentRead segment = new SegmentRead(new Callable<Segment>(){
+       public Segment call() throws IOException{
+         return reader.next();
+       }
+     });
+     // the segments of a file are read one after the other, without a thread waiting in between
+     if(lastSegment == null)
+       start(segment);
+     else
+       lastSegment.then(segment);
+     lastSegment = segment;
+     read = segment;
+   }
+   nextFile = null;
+   
+   pending.add(read);
+   pendingBytes.add(cost);
+ }
+}
+
+private void start(FutureTask<Segment> read){
+ if(pool == null){
+   read.run();
+   return;
+ }
+ try{
+   pool.execute(read);
+ }
+ catch(RejectedExecutionException e){
+   read.cancel(false);  // closed
+ }
+}
+
+/*
+ * the read of a segment, which starts the read of the next segment of the file once it is done. After
+ * a failure the next read finds the reader finished and gives null; the failure is reported with this
+ * segment.
+ */
+private class SegmentRead extends FutureTask<Segment> {
+ private SegmentRead next;
+ 
+ SegmentRead(Callable<Segment> read){
+   super(read);
+ }
+ 
+ synchronized void then(SegmentRead read){
+   if(isDone())
+     start(read);
+   else
+     next = read;
+ }
+ 
+ protected synchronized void done(){
+   if(next != null)
+     start(next);
+ }
+}
+}
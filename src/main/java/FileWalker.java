@@ -0,0 +1,228 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+
+/**
+ * The FileWalker class lists the input files of FileCollectionReader lazily: directories are read
+ * through a DirectoryStream one entry at a time as files are asked for, so a collection of millions of
+ * files neither waits for a full listing nor keeps it in memory. Subdirectories are visited (breadth
+ * first) only if recursive is set.
+ * 
+ * Hidden files and directories can be skipped, and files are filtered by glob include and exclude
+ * patterns. A pattern without a '/' is matched against the file name (e.g. "*.txt"), one with a '/'
+ * against the path relative to the root (e.g. "2012/**.in").
+ * 
+ * @author xuke
+ *
+ */
+public class FileWalker implements Iterator<File>, Closeable {
+  private final Path root;
+  private final boolean recursive;
+  private final boolean skipHidden;
+  private final List<Matcher> includes;
+  private final List<Matcher> excludes;
+  
+  private final Queue<Path> directories = new ArrayDeque<Path>();
+  private DirectoryStream<Path> stream;
+  private Iterator<Path> entries;
+  private File next;
+  private boolean single;  // root is a file, returned first and alone
+  
+  // for the estimate of the number of files
+  private int filesFound;
+  private int directoriesDone;
+  
+  /**
+   * @param root directory to walk, or a single file which is then the only file returned.
+   * @param includes glob patterns of the files to return, all files if null or empty.
+   * @param excludes glob patterns of the files to leave out.
+   */
+  public FileWalker(File root, boolean recursive, boolean skipHidden, String [] includes, String [] excludes){
+    this.root = root.toPath();
+    this.recursive = recursive;
+    this.skipHidden = skipHidden;
+    this.includes = matchers(includes);
+    this.excludes = matchers(excludes);
+    
+    if(root.isFile()){
+      next = root;
+      single = true;
+      filesFound = 1;
+    }
+    else{
+      directories.add(this.root);
+    }
+  }
+  
+  public boolean hasNext(){
+    if(next == null && !single)
+      next = advance();
+    return next != null;
+  }
+  
+  public File next(){
+    if(!hasNext())
+      throw new NoSuchElementException();
+    File file = next;
+    next = null;
+    return file;
+  }
+  
+  public void remove(){
+    throw new UnsupportedOperationException();
+  }
+  
+  /**
+   * an estimate of the total number of files: the files found so far plus, for each directory not
+   * read yet, the average number of files per directory read so far. Exact once the walk is complete.
+   */
+  public int estimateTotal(){
+    int estimate = filesFound;
+    if(directoriesDone > 0)
+      estimate += (int) Math.round(directories.size() * (double) filesFound / directoriesDone);
+    return estimate;
+  }
+  
+  public void close() throws IOException{
+    directories.clear();
+    closeStream();
+  }
+  
+  /*
+   * the next accepted file, reading further entries and directories as needed; null at the end.
+   */
+  private File advance(){
+    while(true){
+      if(entries == null){
+        Path dir = directories.poll();
+        if(dir == null)
+          return null;
+        open(dir);
+        continue;
+      }
+      
+      Path entry;
+      try{
+        if(!entries.hasNext()){
+          closeStream();
+          directoriesDone++;
+          continue;
+        }
+        entry = entries.next();
+      }
+      catch(DirectoryIteratorException e){
+        System.out.println("Cannot read directory " + e.getCause().getMessage());
+        closeStream();
+        directoriesDone++;
+        continue;
+      }
+      
+      if(skipHidden && isHidden(entry))
+        continue;
+      
+      if(Files.isDirectory(entry)){
+        if(recursive)
+          directories.add(entry);
+      }
+      else if(Files.isRegularFile(entry) && accept(entry)){
+        filesFound++;
+        return entry.toFile();
+      }
+    }
+  }
+  
+  private void open(Path dir){
+    try{
+      stream = Files.newDirectoryStream(dir);
+      entries = stream.iterator();
+    }
+    catch(IOException e){
+      System.out.println("Cannot read directory " + dir);
+      directoriesDone++;
+    }
+  }
+  
+  private void closeStream(){
+    if(stream != null){
+      try{
+        stream.close();
+      }
+      catch(IOException e){
+        // nothing left to read from it
+      }
+    }
+    stream = null;
+    entries = null;
+  }
+  
+  private boolean accept(Path file){
+    Path relative = root.relativize(file);
+    if(!includes.isEmpty() && !matches(includes, relative))
+      return false;
+    return !matches(excludes, relative);
+  }
+  
+  private static boolean matches(List<Matcher> matchers, Path relative){
+    for(Matcher m : matchers){
+      if(m.matches(relative))
+        return true;
+    }
+    return false;
+  }
+  
+  private static boolean isHidden(Path path){
+    Path name = path.getFileName();
+    if(name != null && name.toString().startsWith("."))
+      return true;
+    try{
+      return Files.isHidden(path);
+    }
+    catch(IOException e){
+      return false;
+    }
+  }
+  
+  private static List<Matcher> matchers(String [] patterns){
+    List<Matcher> matchers = new ArrayList<Matcher>();
+    if(patterns != null){
+      for(String p : patterns){
+        if(p != null && p.trim().length() > 0)
+          matchers.add(new Matcher(p.trim()));
+      }
+    }
+    return matchers;
+  }
+}
+
+
+/*
+ * a glob pattern, matched against the file name or, if it contains a '/', the relative path.
+ */
+class Matcher {
+private final PathMatcher matcher;
+private final boolean wholePath;
+
+Matcher(String glob){
+ matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+ wholePath = glob.indexOf('/') >= 0;
+}
+
+boolean matches(Path relative){
+ if(wholePath)
+   return matcher.matches(relative);
+ Path name = relative.getFileName();
+ return name != null && matcher.matches(name);
+}
+}
@@ -4,12 +4,15 @@ import java.util.*;
 
 import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_component.JCasAnnotator_ImplBase;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceAccessException;
 import org.apache.uima.resource.ResourceConfigurationException;
 import org.apache.uima.resource.ResourceInitializationException;
 
 import edu.stanford.nlp.ling.Word;
 import edu.stanford.nlp.objectbank.TokenizerFactory;
+import edu.stanford.nlp.pipeline.DefaultPaths;
 import edu.stanford.nlp.process.Tokenizer;
 import edu.stanford.nlp.process.PTBTokenizer.PTBTokenizerFactory;
 
@@ -21,21 +24,77 @@ import edu.stanford.nlp.process.PTBTokenizer.PTBTokenizerFactory;
  *
  */
 public class GeneNameAnnotator extends JCasAnnotator_ImplBase{
-  // TODO set dictionary as configuration parameters
+  /* key of the external resource dependency holding the dictionaries, see NerAnnotator.xml */
+  public static final String RES_DICTIONARIES = "Dictionaries";
+  /* whether lines are POS tagged only when a candidate needs it, see NerAnnotator.xml */
+  public static final String PARAM_LAZY_POS = "LazyPosTagging";
+  /* number of stems cached by the recognizer, see NerAnnotator.xml */
+  public static final String PARAM_STEM_CACHE_SIZE = "StemCacheSize";
+  /* number of line bodies whose entities are cached by the recognizer, see NerAnnotator.xml */
+  public static final String PARAM_LINE_CACHE_SIZE = "LineCacheSize";
+  /* number of lines of a document recognized by one parallel task, see NerAnnotator.xml */
+  public static final String PARAM_PARALLEL_CHUNK_LINES = "ParallelChunkLines";
+  /* directory of the result cache, see NerAnnotator.xml */
+  public static final String PARAM_RESULT_CACHE_DIR = "ResultCacheDirectory";
+  
+  // one recognizer per dictionary snapshot and settings, shared by all replicas of the annotator
+  // configured alike; they all tag with the bounded pool of POS models of the JVM (see PosTagger).
+  private static final Map<List<Object>, EntityRecognizer> recognizers = 
+          new HashMap<List<Object>, EntityRecognizer>();
+  
   private EntityRecognizer entityRecognizer;
+  // entities of documents recognized by earlier runs, or null
+  private ResultCache resultCache;
   
   public void initialize(UimaContext aContext) throws ResourceInitializationException{
     super.initialize(aContext);
-    entityRecognizer = new EntityRecognizer();
-    entityRecognizer.initialize();
+    
+    DictionaryResource dic;
+    try{
+      dic = (DictionaryResource) aContext.getResourceObject(RES_DICTIONARIES);
+    }
+    catch(ResourceAccessException e){
+      throw new ResourceInitializationException(e);
+    }
+    
+    DictionarySnapshot snapshot = dic != null ? dic.getDictionaries() 
+            : DictionaryResource_impl.load(DictionarySnapshot.defaultLocation());
+    entityRecognizer = sharedRecognizer(snapshot, 
+            (Boolean) aContext.getConfigParameterValue(PARAM_LAZY_POS), 
+            (Integer) aContext.getConfigParameterValue(PARAM_STEM_CACHE_SIZE), 
+            (Integer) aContext.getConfigParameterValue(PARAM_LINE_CACHE_SIZE), 
+            (Integer) aContext.getConfigParameterValue(PARAM_PARALLEL_CHUNK_LINES));
+    
+    String cacheDir = (String) aContext.getConfigParameterValue(PARAM_RESULT_CACHE_DIR);
+    if(cacheDir != null && cacheDir.trim().length() > 0){
+      try{
+        resultCache = new ResultCache(new File(cacheDir.trim()), 
+                resultVersion(snapshot, entityRecognizer));
+      }
+      catch(IOException e){
+        throw new ResourceInitializationException(e);
+      }
+    }
   }
   
-  public void process(JCas aJCas){
+  /*
+   * everything the entities of a document depend on besides its text: the recognizer version, the
+   * dictionaries, the POS model and the settings that can change the entities. Only the line cache
+   * can, since a cached line is not tagged in its own context; lazy tagging and chunking cannot.
+   */
+  static String resultVersion(DictionarySnapshot snapshot, EntityRecognizer recognizer){
+    return "recognizer=" + EntityRecognizer.VERSION + "|dictionaries=" + snapshot.getFingerprint() 
+            + "|pos=" + DefaultPaths.DEFAULT_POS_MODEL 
+            + "|lineCache=" + (recognizer.getLineCache().getCapacity() > 0);
+  }
+  
+  public void process(JCas aJCas) throws AnalysisEngineProcessException{
+    long start = System.nanoTime();
+    Metrics metrics = Metrics.get();
     // get the entire context of a txt file 
     String fulltext = aJCas.getDocumentText();
-    entityRecognizer.recognizeEntities(fulltext);
+    ArrayList<MyAnnotation> entities = recognize(entityRecognizer, resultCache, fulltext, metrics);
     
-    ArrayList<MyAnnotation> entities = entityRecognizer.getEntities();
     for(MyAnnotation entity : entities){
       GeneNameEntity gene = new GeneNameEntity(aJCas);  
       gene.setBegin(entity.getBegin());
@@ -47,6 +106,103 @@ public class GeneNameAnnotator extends JCasAnnotator_ImplBase{
       gene.addToIndexes();
       
     }
+    
+    metrics.add(Metrics.DOCUMENTS, 1);
+    metrics.add(Metrics.CHARACTERS, fulltext.length());
+    metrics.record(Metrics.ANNOTATE, System.nanoTime() - start);
+  }
+  
+  /*
+   * the entities of text, from cache if it is not null and holds them. A failure of the recognizer
+   * (e.g. of a chunk recognized in parallel) fails the document instead of leaving it without
+   * entities, and leaves nothing in cache: only entities of a recognition that completed are cached.
+   */
+  static ArrayList<MyAnnotation> recognize(EntityRecognizer recognizer, ResultCache cache, String text, 
+          Metrics metrics) throws AnalysisEngineProcessException{
+    String key = null;
+    if(cache != null){
+      // unchanged documents reuse the entities of an earlier run
+      key = cache.key(text);
+      ArrayList<MyAnnotation> entities = cache.get(key);
+      if(entities != null){
+        metrics.add(Metrics.RESULT_CACHE_HITS, 1);
+        return entities;
+      }
+    }
+    
+    ArrayList<MyAnnotation> entities;
+    try{
+      entities = recognizer.recognizeEntities(text);
+    }
+    catch(RuntimeException e){
+      throw new AnalysisEngineProcessException(e);
+    }
+    
+    if(cache != null){
+      cache.put(key, entities);
+      metrics.add(Metrics.RESULT_CACHE_MISSES, 1);
+    }
+    return entities;
+  }
+  
+  public void collectionProcessComplete() throws AnalysisEngineProcessException{
+    super.collectionProcessComplete();
+    // every replica gets here, so the JVM-wide totals go to Metrics (written once by the consumer)
+    // instead of being printed by each of them.
+    reportCaches(Metrics.get());
+  }
+  
+  /*
+   * set the cache gauges of metrics to the totals of all shared recognizers.
+   */
+  static void reportCaches(Metrics metrics){
+    long stemHits = 0, stemMisses = 0, lineHits = 0, lineMisses = 0;
+    synchronized(recognizers){
+      for(EntityRecognizer recognizer : recognizers.values()){
+        stemHits += recognizer.getStemCache().getCache().getHits();
+        stemMisses += recognizer.getStemCache().getCache().getMisses();
+        lineHits += recognizer.getLineCache().getHits();
+        lineMisses += recognizer.getLineCache().getMisses();
+      }
+    }
+    metrics.set(Metrics.STEM_CACHE_HITS, stemHits);
+    metrics.set(Metrics.STEM_CACHE_MISSES, stemMisses);
+    metrics.set(Metrics.LINE_CACHE_HITS, lineHits);
+    metrics.set(Metrics.LINE_CACHE_MISSES, lineMisses);
+  }
+  
+  /*
+   * the recognizer of dic with the default settings.
+   */
+  static EntityRecognizer sharedRecognizer(DictionarySnapshot dic){
+    return sharedRecognizer(dic, null, null, null, null);
+  }
+  
+  /*
+   * the recognizer is reentrant, so replicas running on different CPE threads use the same instance,
+   * unless they are configured differently: replicas get the recognizer of their own dictionaries and
+   * settings (null meaning the default of a setting), created on first use.
+   */
+  static EntityRecognizer sharedRecognizer(DictionarySnapshot dic, Boolean lazy, Integer stemCacheSize, 
+          Integer lineCacheSize, Integer chunkLines){
+    List<Object> key = Arrays.<Object>asList(dic, lazy, stemCacheSize, lineCacheSize, chunkLines);
+    synchronized(recognizers){
+      EntityRecognizer recognizer = recognizers.get(key);
+      if(recognizer == null){
+        recognizer = new EntityRecognizer();
+        recognizer.initialize(dic);
+        if(lazy != null)
+          recognizer.setLazyPosTagging(lazy);
+        if(stemCacheSize != null)
+          recognizer.setStemCacheSize(stemCacheSize);
+        if(lineCacheSize != null)
+          recognizer.setLineCacheSize(lineCacheSize);
+        if(chunkLines != null)
+          recognizer.setParallelChunkLines(chunkLines);
+        recognizers.put(key, recognizer);
+      }
+      return recognizer;
+    }
   }
  
 }
@@ -31,61 +31,101 @@
  *******************************************************************************************               
  */
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.net.MalformedURLException;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.CASException;
 import org.apache.uima.cas.FSIndex;
-import org.apache.uima.cas.FSIndexRepository;
-import org.apache.uima.cas.FSIterator;
-import org.apache.uima.cas.impl.XCASSerializer;
-import org.apache.uima.cas_data.FeatureStructure;
 import org.apache.uima.collection.CasConsumer_ImplBase;
-import org.apache.uima.examples.SourceDocumentInformation;
 import org.apache.uima.jcas.JCas;
-import org.apache.uima.jcas.tcas.Annotation;
 import org.apache.uima.resource.ResourceInitializationException;
 import org.apache.uima.resource.ResourceProcessException;
-import org.apache.uima.util.XMLSerializer;
-import org.xml.sax.SAXException;
+import org.apache.uima.util.ProcessTrace;
 
 /**
  * 
  * The 'CAS consumer' component for CPE.
- * A simple CAS consumer that generates XCAS (XML representation of the CAS) files in the
- * filesystem.
+ * It writes the gene name entities of every CAS to the output file, in the order they were recognized:
+ * one line per entity, or records of the compact binary format read back by EntityReader. The file is
+ * opened (and truncated) once in initialize(), appended to by each processCas() and closed in
+ * collectionProcessComplete(), so the results of all documents of a run end up in the file.
  * <p>
- * This CAS Consumer takes one parameters:
+ * The consumer may be replicated on every CPE processing thread. Replicas share the output through
+ * EntityOutput, which can split it into shards written in parallel and merge them at the end.
+ * <p>
+ * This CAS Consumer takes these parameters:
  * <ul>
- * <li><code>OutputDirectory</code> - path to directory into which output files will be written</li>
+ * <li><code>outputFile</code> - path of the file the entities are written to</li>
+ * <li><code>OutputFormat</code> - text or binary</li>
+ * <li><code>Encoding</code> - character encoding of a text output file, the system default if absent</li>
+ * <li><code>FlushBatchSize</code> - number of entities written between two flushes of the file</li>
+ * <li><code>OutputShards</code> - number of files the output is split into while the CPE runs</li>
+ * <li><code>MergeShards</code> - whether the shards are merged into outputFile, ordered by sentence ID</li>
+ * <li><code>WriteBehind</code> - whether each shard is written behind by a thread of its own</li>
+ * <li><code>MetricsFile</code> - file the pipeline Metrics are written to as JSON at the end of the run</li>
  * </ul>
  * 
  * 
  */
 public class GeneNameConsumer extends CasConsumer_ImplBase {
   /**
-   * Name of configuration parameter that must be set to the path of a directory into which the
-   * output files will be written.
+   * Name of configuration parameter that must be set to the path of the file into which the
+   * entities will be written.
    */
   public static final String PARAM_OUTPUTFILE = "outputFile";
+  /* format of the output file, EntityWriter.FORMAT_TEXT or EntityWriter.FORMAT_BINARY */
+  public static final String PARAM_OUTPUT_FORMAT = "OutputFormat";
+  /* character encoding of the output file */
+  public static final String PARAM_ENCODING = "Encoding";
+  /* number of entities written between two flushes, 0 flushes only when the collection is complete */
+  public static final String PARAM_FLUSH_BATCH_SIZE = "FlushBatchSize";
+  /* number of shards the output is split into */
+  public static final String PARAM_OUTPUT_SHARDS = "OutputShards";
+  /* whether the shards are merged into one file at the end of the run */
+  public static final String PARAM_MERGE_SHARDS = "MergeShards";
+  /* whether shards are written by threads of their own, see EntityOutput */
+  public static final String PARAM_WRITE_BEHIND = "WriteBehind";
+  /* file receiving the metrics of the run as JSON */
+  public static final String PARAM_METRICS_FILE = "MetricsFile";
+  /* label of the index of GeneNameEntity sorted by gid, see NerAnnotator.xml */
+  public static final String GID_INDEX = "GeneNameEntitiesByGid";
 
   private File mOutputFile;
+  private EntityOutput output;
+  private EntityWriter writer;
+  private File metricsFile;
 
   public void initialize() throws ResourceInitializationException {
     super.initialize();
     mOutputFile = new File((String) getConfigParameterValue(PARAM_OUTPUTFILE));
+    
+    Integer batchSize = (Integer) getConfigParameterValue(PARAM_FLUSH_BATCH_SIZE);
+    Integer shards = (Integer) getConfigParameterValue(PARAM_OUTPUT_SHARDS);
+    Boolean merge = (Boolean) getConfigParameterValue(PARAM_MERGE_SHARDS);
+    Boolean writeBehind = (Boolean) getConfigParameterValue(PARAM_WRITE_BEHIND);
+    String metrics = (String) getConfigParameterValue(PARAM_METRICS_FILE);
+    if(metrics != null && metrics.trim().length() > 0)
+      metricsFile = new File(metrics.trim());
+    
+    String format = (String) getConfigParameterValue(PARAM_OUTPUT_FORMAT);
+    String encoding = (String) getConfigParameterValue(PARAM_ENCODING);
+    try{
+      output = EntityOutput.acquire(mOutputFile, format, encoding, shards == null ? 1 : shards, 
+              merge == null || merge, batchSize == null ? 0 : batchSize, writeBehind != null && writeBehind);
+      writer = output.nextShard();
+    }
+    catch(IOException e){
+      throw new ResourceInitializationException(e);
+    }
   }
 
   /**
    * Processes the CasContainer which was populated by the TextAnalysisEngines. <br>
-   * In this case, the CAS is converted to XML and written into the output file .
+   * In this case, the gene name entities of the CAS are appended to the output file.
    * 
    * @param aCAS
    *          CasContainer which has been populated by the TAEs
@@ -103,55 +143,112 @@ public class GeneNameConsumer extends CasConsumer_ImplBase {
       throw new ResourceProcessException(e);
     }
     
-    // write GeneNameEntity instances to output file
+    // hold the shard for the whole document, so its lines stay together when replicas share the shard.
+    // With write-behind the document is queued whole for the thread writing the shard instead.
+    long start = System.nanoTime();
+    int written;
     try{
-      PrintWriter pw = new PrintWriter(mOutputFile);
-     
-      
-      // following code return all entities with sorted order.
-      FSIndex geneNameIndex = jcas.getAnnotationIndex(GeneNameEntity.type);
+      if(output.isWriteBehind()){
+        List<MyAnnotation> entities = collectEntities(jcas);
+        output.write(writer, entities);
+        written = entities.size();
+      }
+      else{
+        synchronized(writer){
+          written = writeEntities(jcas);
+        }
+      }
+    }
+    catch(IOException e){
+      throw new ResourceProcessException(e);
+    }
+    Metrics.get().add(Metrics.ENTITIES_WRITTEN, written);
+    Metrics.get().record(Metrics.WRITE, System.nanoTime() - start);
+  }
+  
+  /*
+   * @return the number of entities written.
+   */
+  private int writeEntities(JCas jcas) throws IOException{
+    int written = 0;
+    // the index sorted by gid returns the entities in the order they were recognized, so they are
+    // written as they are read. Without it (a CAS built from other descriptors) fall back to sorting.
+    FSIndex geneNameIndex = jcas.getJFSIndexRepository().getIndex(GID_INDEX);
+    if(geneNameIndex != null){
       Iterator geneNameIterator = geneNameIndex.iterator();
-      
-      ArrayList<MyAnnotation> res = new ArrayList<MyAnnotation>();
       while(geneNameIterator.hasNext()){
-        GeneNameEntity gene = (GeneNameEntity) geneNameIterator.next();
-        
-        MyAnnotation ann = new MyAnnotation();
-        ann.setBegin(gene.getBegin());
-        ann.setEnd(gene.getEnd());
-        ann.setName(gene.getName());
-        ann.setSentenceID(gene.getSentenceID());
-        ann.setID(gene.getGid());
-        
-        res.add(ann);
+        writeGeneName((GeneNameEntity) geneNameIterator.next());
+        written++;
       }
-      
-      Collections.sort(res);
-      
+    }
+    else{
+      List<MyAnnotation> res = collectEntities(jcas);
       for(MyAnnotation ann : res)
-        writeGeneName(ann, pw);
-      
-      pw.close();
+        writer.write(ann.getSentenceID(), ann.getBegin(), ann.getEnd(), ann.getName());
+      written = res.size();
     }
-    catch(Exception e){
+    return written;
+  }
+  
+  /*
+   * the entities of the CAS as MyAnnotation, in the order they were recognized.
+   */
+  private List<MyAnnotation> collectEntities(JCas jcas){
+    ArrayList<MyAnnotation> res = new ArrayList<MyAnnotation>();
+    FSIndex geneNameIndex = jcas.getJFSIndexRepository().getIndex(GID_INDEX);
+    Iterator geneNameIterator = geneNameIndex != null ? geneNameIndex.iterator() 
+            : jcas.getAnnotationIndex(GeneNameEntity.type).iterator();
+    while(geneNameIterator.hasNext()){
+      GeneNameEntity gene = (GeneNameEntity) geneNameIterator.next();
+      
+      MyAnnotation ann = new MyAnnotation();
+      ann.setBegin(gene.getBegin());
+      ann.setEnd(gene.getEnd());
+      ann.setName(gene.getName());
+      ann.setSentenceID(gene.getSentenceID());
+      ann.setID(gene.getGid());
       
+      res.add(ann);
     }
-  }
-
-  private void writeGeneName(MyAnnotation gene, PrintWriter pw){
-    StringBuilder str = new StringBuilder();
-    str.append(gene.getSentenceID());
-    str.append("|");
     
-    str.append(gene.getBegin());
-    str.append(" ");
-    str.append(gene.getEnd());
-    str.append("|");
-    
-    str.append(gene.getName().trim());
-    str.append("\n");
+    if(geneNameIndex == null)
+      Collections.sort(res);
+    return res;
+  }
+  
+  /**
+   * releases the output once all documents are processed; the last replica closes (and merges) it.
+   */
+  public void collectionProcessComplete(ProcessTrace aTrace) throws ResourceProcessException, IOException {
+    super.collectionProcessComplete(aTrace);
+    // only the replica releasing the output last writes the metrics, once every replica is done
+    if(close() && metricsFile != null)
+      Metrics.get().writeJson(metricsFile);
+  }
+  
+  public void destroy() {
+    try{
+      close();
+    }
+    catch(IOException e){
+      System.out.println("Cannot close " + mOutputFile);
+    }
+    super.destroy();
+  }
+  
+  /*
+   * @return whether this was the last release of the output.
+   */
+  private boolean close() throws IOException{
+    if(output == null)
+      return false;
     
-    pw.write(str.toString());
+    EntityOutput o = output;
+    output = null;
+    return o.release();
   }
-}
 
+  private void writeGeneName(GeneNameEntity gene) throws IOException{
+    writer.write(gene.getSentenceID(), gene.getBegin(), gene.getEnd(), gene.getName());
+  }
+}
@@ -14,9 +14,6 @@ import org.apache.uima.jcas.tcas.Annotation;
  * XML source: src/main/resources/NerTypeSystem.xml
  * @generated */
 public class GeneNameEntity extends Annotation {  
-  private int gid;
-  public int getGid(){return gid;}
-  public void setGid(int gid){this.gid = gid;}
   /** @generated
    * @ordered 
    */
@@ -98,6 +95,24 @@ public class GeneNameEntity extends Annotation {
     if (GeneNameEntity_Type.featOkTst && ((GeneNameEntity_Type)jcasType).casFeat_name == null)
       jcasType.jcas.throwFeatMissing("name", "GeneNameEntity");
     jcasType.ll_cas.ll_setStringValue(addr, ((GeneNameEntity_Type)jcasType).casFeatCode_name, v);}    
+   
+    
+  //*--------------*
+  //* Feature: gid
+
+  /** getter for gid - gets position of the gene name entity in the order it was recognized in the document
+   * @generated */
+  public int getGid() {
+    if (GeneNameEntity_Type.featOkTst && ((GeneNameEntity_Type)jcasType).casFeat_gid == null)
+      jcasType.jcas.throwFeatMissing("gid", "GeneNameEntity");
+    return jcasType.ll_cas.ll_getIntValue(addr, ((GeneNameEntity_Type)jcasType).casFeatCode_gid);}
+    
+  /** setter for gid - sets position of the gene name entity in the order it was recognized in the document 
+   * @generated */
+  public void setGid(int v) {
+    if (GeneNameEntity_Type.featOkTst && ((GeneNameEntity_Type)jcasType).casFeat_gid == null)
+      jcasType.jcas.throwFeatMissing("gid", "GeneNameEntity");
+    jcasType.ll_cas.ll_setIntValue(addr, ((GeneNameEntity_Type)jcasType).casFeatCode_gid, v);}    
   }
 
     
\ No newline at end of file
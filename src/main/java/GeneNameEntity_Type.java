@@ -78,6 +78,24 @@ public class GeneNameEntity_Type extends Annotation_Type {
     ll_cas.ll_setStringValue(addr, casFeatCode_name, v);}
     
   
+ 
+  /** @generated */
+  final Feature casFeat_gid;
+  /** @generated */
+  final int     casFeatCode_gid;
+  /** @generated */ 
+  public int getGid(int addr) {
+        if (featOkTst && casFeat_gid == null)
+      jcas.throwFeatMissing("gid", "GeneNameEntity");
+    return ll_cas.ll_getIntValue(addr, casFeatCode_gid);
+  }
+  /** @generated */    
+  public void setGid(int addr, int v) {
+        if (featOkTst && casFeat_gid == null)
+      jcas.throwFeatMissing("gid", "GeneNameEntity");
+    ll_cas.ll_setIntValue(addr, casFeatCode_gid, v);}
+    
+  
 
 
 
@@ -95,6 +113,10 @@ public class GeneNameEntity_Type extends Annotation_Type {
     casFeat_name = jcas.getRequiredFeatureDE(casType, "name", "uima.cas.String", featOkTst);
     casFeatCode_name  = (null == casFeat_name) ? JCas.INVALID_FEATURE_CODE : ((FeatureImpl)casFeat_name).getCode();
 
+ 
+    casFeat_gid = jcas.getRequiredFeatureDE(casType, "gid", "uima.cas.Integer", featOkTst);
+    casFeatCode_gid  = (null == casFeat_gid) ? JCas.INVALID_FEATURE_CODE : ((FeatureImpl)casFeat_gid).getCode();
+
   }
 }
 
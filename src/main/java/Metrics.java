@@ -0,0 +1,249 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The Metrics class collects the counters and stage latencies of the pipeline, one instance per JVM
+ * shared by the reader, the annotator replicas and the consumers. Counters are plain sums; latencies
+ * go to histograms with a bucket per power of two nanoseconds, from which percentiles are estimated
+ * within a factor of two. Components record once per document, not per token or line, so
+ * that the instrumentation itself does not become a point of contention.
+ * 
+ * The metrics are exposed through JMX (see MetricsMXBean) and can be written as JSON with writeJson().
+ * 
+ * @author xuke
+ *
+ */
+public class Metrics implements MetricsMXBean {
+  /* counters */
+  public static final String DOCUMENTS = "documents";
+  public static final String CHARACTERS = "characters";
+  public static final String LINES = "lines";
+  public static final String TOKENS = "tokens";
+  public static final String DICTIONARY_HITS = "dictionaryHits";
+  public static final String CANDIDATES = "candidates";
+  public static final String ENTITIES = "entities";
+  public static final String POS_LINES = "posLines";
+  public static final String POS_SKIPPED_LINES = "posSkippedLines";
+  public static final String RESULT_CACHE_HITS = "resultCacheHits";
+  public static final String RESULT_CACHE_MISSES = "resultCacheMisses";
+  /* gauges, set to the current totals of the caches shared by the annotators when a run completes */
+  public static final String STEM_CACHE_HITS = "stemCacheHits";
+  public static final String STEM_CACHE_MISSES = "stemCacheMisses";
+  public static final String LINE_CACHE_HITS = "lineCacheHits";
+  public static final String LINE_CACHE_MISSES = "lineCacheMisses";
+  public static final String ENTITIES_WRITTEN = "entitiesWritten";
+  
+  /* stages, timed per document */
+  public static final String READ = "read";
+  public static final String TOKENIZE = "tokenize";
+  public static final String MATCH = "match";
+  public static final String POS = "pos";
+  public static final String ANNOTATE = "annotate";
+  public static final String WRITE = "write";
+  
+  public static final String OBJECT_NAME = "edu.cmu.lti.kex:type=Metrics";
+  
+  private static final Metrics instance = register(new Metrics());
+  
+  private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+  private final ConcurrentMap<String, LatencyHistogram> histograms = 
+          new ConcurrentHashMap<String, LatencyHistogram>();
+  
+  Metrics(){
+  }
+  
+  /**
+   * @return the metrics of this JVM.
+   */
+  public static Metrics get(){
+    return instance;
+  }
+  
+  public void add(String counter, long delta){
+    AtomicLong c = counters.get(counter);
+    if(c == null){
+      AtomicLong created = new AtomicLong();
+      c = counters.putIfAbsent(counter, created);
+      if(c == null)
+        c = created;
+    }
+    c.addAndGet(delta);
+  }
+  
+  /**
+   * set counter to value, for gauges whose total is kept elsewhere and only copied here.
+   */
+  public void set(String counter, long value){
+    AtomicLong c = counters.get(counter);
+    if(c == null){
+      AtomicLong created = new AtomicLong();
+      c = counters.putIfAbsent(counter, created);
+      if(c == null)
+        c = created;
+    }
+    c.set(value);
+  }
+  
+  public long getCounter(String counter){
+    AtomicLong c = counters.get(counter);
+    return c == null ? 0 : c.get();
+  }
+  
+  /**
+   * record one run of stage that took nanos nanoseconds.
+   */
+  public void record(String stage, long nanos){
+    LatencyHistogram h = histograms.get(stage);
+    if(h == null){
+      LatencyHistogram created = new LatencyHistogram();
+      h = histograms.putIfAbsent(stage, created);
+      if(h == null)
+        h = created;
+    }
+    h.record(nanos);
+  }
+  
+  public Map<String, Long> getCounters(){
+    Map<String, Long> values = new TreeMap<String, Long>();
+    for(Map.Entry<String, AtomicLong> e : counters.entrySet())
+      values.put(e.getKey(), e.getValue().get());
+    return values;
+  }
+  
+  public Map<String, Double> getMeanLatencies(){
+    Map<String, Double> values = new TreeMap<String, Double>();
+    for(Map.Entry<String, LatencyHistogram> e : histograms.entrySet())
+      values.put(e.getKey(), e.getValue().mean() / 1e6);
+    return values;
+  }
+  
+  public void reset(){
+    counters.clear();
+    histograms.clear();
+  }
+  
+  public String getJson(){
+    StringBuilder json = new StringBuilder();
+    json.append("{\n  \"counters\": {");
+    String sep = "\n";
+    for(Map.Entry<String, Long> e : getCounters().entrySet()){
+      json.append(sep).append("    \"").append(e.getKey()).append("\": ").append(e.getValue());
+      sep = ",\n";
+    }
+    json.append("\n  },\n  \"latencies\": {");
+    sep = "\n";
+    for(Map.Entry<String, LatencyHistogram> e : new TreeMap<String, LatencyHistogram>(histograms).entrySet()){
+      LatencyHistogram h = e.getValue();
+      json.append(sep).append("    \"").append(e.getKey()).append("\": {")
+          .append("\"count\": ").append(h.count())
+          .append(", \"totalMillis\": ").append(millis(h.sum()))
+          .append(", \"meanMillis\": ").append(millis(h.mean()))
+          .append(", \"p50Millis\": ").append(millis(h.percentile(0.5)))
+          .append(", \"p90Millis\": ").append(millis(h.percentile(0.9)))
+          .append(", \"p99Millis\": ").append(millis(h.percentile(0.99)))
+          .append(", \"maxMillis\": ").append(millis(h.max()))
+          .append("}");
+      sep = ",\n";
+    }
+    json.append("\n  }\n}\n");
+    return json.toString();
+  }
+  
+  /**
+   * write getJson() to file.
+   */
+  public void writeJson(File file) throws IOException{
+    Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+    try{
+      out.write(getJson());
+    }
+    finally{
+      out.close();
+    }
+  }
+  
+  private static String millis(double nanos){
+    return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+  }
+  
+  private static Metrics register(Metrics metrics){
+    try{
+      ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName(OBJECT_NAME));
+    }
+    catch(JMException e){
+      // e.g. already registered by another class loader; the metrics still work without JMX
+    }
+    catch(SecurityException e){
+      // not allowed to register MBeans
+    }
+    return metrics;
+  }
+}
+
+
+/*
+ * a latency histogram with one bucket per power of two nanoseconds: bucket b counts durations in
+ * [2^b, 2^(b+1)). Updated without locks.
+ */
+class LatencyHistogram {
+private final AtomicLongArray buckets = new AtomicLongArray(64);
+private final AtomicLong count = new AtomicLong();
+private final AtomicLong sum = new AtomicLong();
+private final AtomicLong max = new AtomicLong();
+
+void record(long nanos){
+ if(nanos < 0)
+   nanos = 0;
+ buckets.incrementAndGet(63 - Long.numberOfLeadingZeros(nanos | 1));
+ count.incrementAndGet();
+ sum.addAndGet(nanos);
+ long m;
+ while(nanos > (m = max.get()) && !max.compareAndSet(m, nanos)){
+   // retry
+ }
+}
+
+long count(){
+ return count.get();
+}
+
+long sum(){
+ return sum.get();
+}
+
+long max(){
+ return max.get();
+}
+
+double mean(){
+ long n = count.get();
+ return n == 0 ? 0 : (double) sum.get() / n;
+}
+
+/*
+ * an upper bound of the p-quantile: the end of the bucket holding it, or the maximum if lower.
+ */
+double percentile(double p){
+ long n = count.get();
+ if(n == 0)
+   return 0;
+ long rank = (long) Math.ceil(p * n);
+ long seen = 0;
+ for(int b = 0; b < 64; b++){
+   seen += buckets.get(b);
+   if(seen >= rank)
+     return Math.min(Math.pow(2, b + 1), max.get());
+ }
+ return max.get();
+}
+}
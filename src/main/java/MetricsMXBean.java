@@ -0,0 +1,31 @@
+import java.util.Map;
+
+/**
+ * management interface of Metrics, registered with the platform MBean server as
+ * "edu.cmu.lti.kex:type=Metrics" so that a running pipeline can be watched with jconsole or any JMX
+ * client.
+ * 
+ * @author xuke
+ *
+ */
+public interface MetricsMXBean {
+  /**
+   * @return the value of every counter, by name.
+   */
+  Map<String, Long> getCounters();
+  
+  /**
+   * @return the mean latency of every stage in milliseconds, by name.
+   */
+  Map<String, Double> getMeanLatencies();
+  
+  /**
+   * @return counters and latency histograms as a JSON object.
+   */
+  String getJson();
+  
+  /**
+   * clear all counters and histograms.
+   */
+  void reset();
+}
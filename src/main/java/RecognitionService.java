@@ -0,0 +1,311 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * The RecognitionService class keeps an EntityRecognizer loaded for online use, without a CPE. Callers
+ * in the same JVM use recognize(); other processes POST text to the local HTTP endpoint started by
+ * startHttp(), and get back the entities in the text format of GeneNameConsumer, one
+ * 'sentenceID|begin end|name' line per entity.
+ *
+ * Concurrent requests are micro-batched onto a fixed number of workers: a worker takes the first pending
+ * request, waits at most maxDelayMillis for more until the batch holds maxBatchLines lines, and then
+ * recognizes the requests of the batch one after another, so that no more than workerCount requests
+ * compete for the cores however many callers there are. Each request gets its own entities, numbered
+ * from 1. The POS tagger pool (see EntityRecognizer.setMaxPosTaggers()) holds at least a tagger per
+ * worker, so a worker never waits for another one to finish tagging. HTTP requests are handled by a
+ * fixed pool of HANDLERS_PER_WORKER threads per worker, each waiting for the batch of its request.
+ *
+ * Usage: RecognitionService [port] [snapshot]
+ *
+ * @author xuke
+ *
+ */
+public class RecognitionService implements Closeable {
+  public static final int DEFAULT_PORT = 8089;
+  public static final String CONTEXT = "/recognize";
+  public static final int DEFAULT_MAX_BATCH_LINES = 256;
+  public static final long DEFAULT_MAX_DELAY_MILLIS = 5;
+  /* HTTP handler threads per worker, enough for the worker to gather several requests into a batch */
+  public static final int HANDLERS_PER_WORKER = 4;
+
+  private final EntityRecognizer recognizer;
+  private final int maxBatchLines;
+  private final long maxDelayMillis;
+  private final BlockingQueue<PendingRequest> queue = new LinkedBlockingQueue<PendingRequest>();
+  private final List<Thread> workers = new ArrayList<Thread>();
+  private volatile boolean closed = false;
+
+  private HttpServer server;
+  private ExecutorService httpExecutor;
+
+  /**
+   * a service over the recognizer of the dictionaries in snapshot, shared with GeneNameAnnotator, with
+   * a worker per core and the default batching.
+   */
+  public RecognitionService(File snapshot){
+    this(GeneNameAnnotator.sharedRecognizer(DictionaryResource_impl.load(snapshot)),
+            Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_BATCH_LINES, DEFAULT_MAX_DELAY_MILLIS);
+  }
+
+  /**
+   * @param recognizer an initialized recognizer.
+   * @param workerCount number of batches recognized at the same time.
+   * @param maxBatchLines lines a worker gathers before it stops waiting for more requests.
+   * @param maxDelayMillis longest time a request waits for others to join its batch; 0 only batches
+   * requests that are already pending.
+   */
+  public RecognitionService(EntityRecognizer recognizer, int workerCount, int maxBatchLines, long maxDelayMillis){
+    this.recognizer = recognizer;
+    this.maxBatchLines = Math.max(1, maxBatchLines);
+    this.maxDelayMillis = Math.max(0, maxDelayMillis);
+
+    workerCount = Math.max(1, workerCount);
+    if(EntityRecognizer.getMaxPosTaggers() < workerCount)
+      EntityRecognizer.setMaxPosTaggers(workerCount);
+    for(int k = 0; k < workerCount; k++){
+      Thread worker = new Thread(new Runnable(){
+        public void run(){
+          work();
+        }
+      }, "recognition-worker-" + k);
+      worker.setDaemon(true);
+      worker.start();
+      workers.add(worker);
+    }
+  }
+
+  /**
+   * recognize the gene names of text, waiting for the batch it joins.
+   * @return the entities of text, numbered from 1, with offsets relative to their line.
+   */
+  public List<MyAnnotation> recognize(String text) throws InterruptedException{
+    PendingRequest request = new PendingRequest(text);
+    // close() drains the queue under the same lock, so a request is either refused or failed by it
+    synchronized(queue){
+      if(closed)
+        throw new IllegalStateException("RecognitionService is closed");
+      queue.add(request);
+    }
+    return request.await();
+  }
+
+  /**
+   * serve POST requests on CONTEXT of the loopback interface at port (0 picks a free port).
+   * @return the port the server listens on.
+   */
+  public synchronized int startHttp(int port) throws IOException{
+    if(server != null)
+      return server.getAddress().getPort();
+
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getByName(null), port), 0);
+    server.createContext(CONTEXT, new RecognizeHandler());
+    // handlers block until their batch is recognized; requests beyond the handlers wait in the queue
+    // of the executor instead of starting more threads
+    httpExecutor = Executors.newFixedThreadPool(workers.size() * HANDLERS_PER_WORKER, 
+            VirtualThreads.daemonThreads("recognition-http"));
+    server.setExecutor(httpExecutor);
+    server.start();
+    return server.getAddress().getPort();
+  }
+
+  /**
+   * stop the HTTP server and the workers; pending requests fail.
+   */
+  public synchronized void close(){
+    List<PendingRequest> pending = new ArrayList<PendingRequest>();
+    synchronized(queue){
+      closed = true;
+      queue.drainTo(pending);
+    }
+    if(server != null){
+      server.stop(0);
+      httpExecutor.shutdown();
+      server = null;
+    }
+    for(Thread worker : workers)
+      worker.interrupt();
+
+    for(PendingRequest request : pending)
+      request.fail(new IllegalStateException("RecognitionService is closed"));
+  }
+
+  /*
+   * loop of a worker: gather a batch, recognize it, hand every request its entities.
+   */
+  private void work(){
+    List<PendingRequest> batch = new ArrayList<PendingRequest>();
+    try{
+      while(!closed){
+        batch.add(queue.take());
+        int lines = batch.get(0).getLineCount();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        while(lines < maxBatchLines){
+          long wait = deadline - System.nanoTime();
+          PendingRequest next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+          if(next == null)
+            break;
+          batch.add(next);
+          lines += next.getLineCount();
+        }
+
+        recognizeBatch(batch);
+        batch.clear();
+      }
+    }
+    catch(InterruptedException e){
+      // closed
+    }
+    finally{
+      // requests gathered but not recognized yet; those already answered keep their answer
+      for(PendingRequest request : batch)
+        request.fail(new IllegalStateException("RecognitionService is closed"));
+    }
+  }
+
+  private void recognizeBatch(List<PendingRequest> batch){
+    for(PendingRequest request : batch){
+      try{
+        request.complete(recognizer.recognizeEntities(request.getText()));
+      }
+      catch(RuntimeException e){
+        request.fail(e);
+      }
+    }
+  }
+
+  /*
+   * POST CONTEXT: the request body is the text (UTF-8), the response the entities as text lines.
+   */
+  private class RecognizeHandler implements HttpHandler {
+    public void handle(HttpExchange exchange) throws IOException{
+      try{
+        if(!"POST".equals(exchange.getRequestMethod())){
+          exchange.getResponseHeaders().set("Allow", "POST");
+          exchange.sendResponseHeaders(405, -1);
+          return;
+        }
+
+        String text = read(exchange.getRequestBody());
+        StringBuilder response = new StringBuilder();
+        int status = 200;
+        try{
+          for(MyAnnotation ann : recognize(text)){
+            response.append(ann.getSentenceID()).append('|').append(ann.getBegin()).append(' ')
+                .append(ann.getEnd()).append('|').append(ann.getName().trim()).append('\n');
+          }
+        }
+        catch(InterruptedException e){
+          status = 503;
+          response.append("Interrupted\n");
+        }
+        catch(RuntimeException e){
+          status = closed ? 503 : 500;
+          response.setLength(0);
+          // toString() names the exception when it has no message
+          response.append(e.getMessage() != null ? e.getMessage() : e.toString()).append('\n');
+        }
+
+        byte [] bytes = response.toString().getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if(bytes.length > 0){
+          OutputStream out = exchange.getResponseBody();
+          out.write(bytes);
+          out.close();
+        }
+      }
+      finally{
+        exchange.close();
+      }
+    }
+  }
+
+  private static String read(InputStream in) throws IOException{
+    Reader reader = new InputStreamReader(in, "UTF-8");
+    StringBuilder text = new StringBuilder();
+    char [] buf = new char[8192];
+    int n;
+    while((n = reader.read(buf)) > 0)
+      text.append(buf, 0, n);
+    reader.close();
+    return text.toString();
+  }
+
+  /**
+   * serve the recognizer over HTTP until the JVM is stopped.
+   */
+  public static void main(String [] args) throws IOException{
+    int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+    File snapshot = args.length > 1 ? new File(args[1]) : DictionarySnapshot.defaultLocation();
+
+    RecognitionService service = new RecognitionService(snapshot);
+    port = service.startHttp(port);
+    System.out.println("Recognizing gene names on http://localhost:" + port + CONTEXT);
+  }
+}
+
+
+/*
+ * a request waiting in the queue of RecognitionService until a worker completes or fails it.
+ */
+class PendingRequest {
+private final String text;
+private final int lineCount;
+private final CountDownLatch done = new CountDownLatch(1);
+private volatile List<MyAnnotation> entities;
+private volatile RuntimeException error;
+
+PendingRequest(String text){
+ this.text = text;
+ int lines = 1;
+ for(int k = 0; k < text.length(); k++)
+   if(text.charAt(k) == '\n')
+     lines++;
+ this.lineCount = lines;
+}
+
+public String getText(){
+ return text;
+}
+
+public int getLineCount(){
+ return lineCount;
+}
+
+/*
+ * complete() and fail() only answer a request once; later calls are ignored.
+ */
+public synchronized void complete(List<MyAnnotation> entities){
+ if(done.getCount() == 0)
+   return;
+ this.entities = entities;
+ done.countDown();
+}
+
+public synchronized void fail(RuntimeException error){
+ if(done.getCount() == 0)
+   return;
+ this.error = error;
+ done.countDown();
+}
+
+public List<MyAnnotation> await() throws InterruptedException{
+ done.await();
+ if(error != null)
+   throw error;
+ return entities;
+}
+}
@@ -0,0 +1,165 @@
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The ResultCache class keeps the entities recognized in each document in a directory, so that a
+ * document seen by an earlier run is not recognized again. Entries are keyed by the SHA-256 hash of the
+ * document text together with a version string (the recognizer version, the dictionary fingerprint, the
+ * POS model and the settings that change the entities), so that a change of any of them misses the old
+ * entries instead of returning stale results.
+ * 
+ * An entry is a file in the binary format of EntityWriter, stored under a subdirectory named after the
+ * first two hex digits of its key. Entries are written to a temporary file and renamed into place, so
+ * replicas and concurrent runs sharing the directory never read a half-written entry. Nothing is ever
+ * evicted; deleting the directory clears the cache.
+ * 
+ * @author xuke
+ *
+ */
+public class ResultCache {
+  private static final String FORMAT = "kex-results-1";
+  private static final String SUFFIX = ".ent";
+  private static final char [] HEX = "0123456789abcdef".toCharArray();
+  
+  private final File directory;
+  private final String version;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  
+  /**
+   * @param version anything the results depend on besides the document text.
+   */
+  public ResultCache(File directory, String version) throws IOException{
+    if(!directory.isDirectory() && !directory.mkdirs())
+      throw new IOException("Cannot create directory " + directory);
+    this.directory = directory;
+    this.version = FORMAT + "|" + version;
+  }
+  
+  /**
+   * the key of text: the hex SHA-256 of the version and the characters of text.
+   */
+  public String key(String text){
+    MessageDigest digest;
+    try{
+      digest = MessageDigest.getInstance("SHA-256");
+    }
+    catch(NoSuchAlgorithmException e){
+      // every Java platform is required to support SHA-256
+      throw new IllegalStateException(e);
+    }
+    
+    update(digest, version);
+    digest.update((byte) 0);
+    update(digest, text);
+    
+    byte [] hash = digest.digest();
+    char [] hex = new char[2 * hash.length];
+    for(int k = 0; k < hash.length; k++){
+      hex[2 * k] = HEX[(hash[k] >> 4) & 0xf];
+      hex[2 * k + 1] = HEX[hash[k] & 0xf];
+    }
+    return new String(hex);
+  }
+  
+  /**
+   * the entities cached under key, with their IDs set to their positions (from 1), or null if there
+   * are none (or the entry cannot be read).
+   */
+  public ArrayList<MyAnnotation> get(String key){
+    File file = entry(key);
+    if(!file.isFile()){
+      misses.incrementAndGet();
+      return null;
+    }
+    
+    try{
+      ArrayList<MyAnnotation> entities = new ArrayList<MyAnnotation>(EntityReader.readAll(file, null));
+      for(int k = 0; k < entities.size(); k++)
+        entities.get(k).setID(k + 1);
+      hits.incrementAndGet();
+      return entities;
+    }
+    catch(IOException e){
+      System.out.println("Dropping unreadable cache entry " + file);
+      file.delete();
+      misses.incrementAndGet();
+      return null;
+    }
+  }
+  
+  /**
+   * cache entities under key. Failures are reported and otherwise ignored: the cache is only an
+   * optimization.
+   */
+  public void put(String key, List<MyAnnotation> entities){
+    File file = entry(key);
+    File dir = file.getParentFile();
+    File tmp = null;
+    try{
+      if(!dir.isDirectory() && !dir.mkdirs())
+        throw new IOException("Cannot create directory " + dir);
+      
+      tmp = File.createTempFile(key, ".tmp", dir);
+      EntityWriter writer = EntityWriter.open(tmp, EntityWriter.FORMAT_BINARY, null, 0);
+      try{
+        for(MyAnnotation ann : entities)
+          writer.write(ann.getSentenceID(), ann.getBegin(), ann.getEnd(), ann.getName());
+      }
+      finally{
+        writer.close();
+      }
+      
+      // another replica may have cached the same document meanwhile, with the same content
+      if(!tmp.renameTo(file) && !file.isFile())
+        throw new IOException("Cannot move " + tmp + " to " + file);
+    }
+    catch(IOException e){
+      System.out.println("Cannot write cache entry " + file + ": " + e.getMessage());
+    }
+    finally{
+      if(tmp != null)
+        tmp.delete();
+    }
+  }
+  
+  public long getHits(){
+    return hits.get();
+  }
+  
+  public long getMisses(){
+    return misses.get();
+  }
+  
+  public String toString(){
+    return "Result cache " + directory + ": " + hits.get() + " hits, " + misses.get() + " misses";
+  }
+  
+  private File entry(String key){
+    return new File(new File(directory, key.substring(0, 2)), key + SUFFIX);
+  }
+  
+  /*
+   * feed the UTF-16 code units of text to the digest, through a small buffer instead of an encoded
+   * copy of a whole (possibly huge) document.
+   */
+  private static void update(MessageDigest digest, String text){
+    byte [] buf = new byte[8192];
+    int n = 0;
+    for(int k = 0; k < text.length(); k++){
+      char c = text.charAt(k);
+      buf[n++] = (byte) (c >> 8);
+      buf[n++] = (byte) c;
+      if(n == buf.length){
+        digest.update(buf, 0, n);
+        n = 0;
+      }
+    }
+    digest.update(buf, 0, n);
+  }
+}
@@ -0,0 +1,386 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * The StagedPipeline class runs the work of the CPE (FileCollectionReader, GeneNameAnnotator and
+ * GeneNameConsumer) without the CPM, as three stages connected by bounded queues:
+ * <ul>
+ * <li>read - readThreads threads load files through DocumentLoader, at most readQueueSize files
+ * waiting for a reader; with virtual threads, every file of those is read at once on a thread of its
+ * own;</li>
+ * <li>recognize - recognizeThreads threads run EntityRecognizer, at most recognizeQueueSize loaded
+ * documents waiting for them;</li>
+ * <li>write - one thread writes the entities with EntityWriter, at most writeQueueSize recognized
+ * documents waiting for it.</li>
+ * </ul>
+ * A full queue blocks the stage feeding it, so a slow stage holds back the ones before it instead of
+ * letting documents pile up in memory. Documents are numbered as they are listed and the writer puts
+ * them back in that order, so the output is the same as the one of a single-threaded CPE over the
+ * same files.
+ *
+ * Usage: StagedPipeline inputDirectory outputFile [-readThreads n] [-recognizeThreads n]
+ * [-readQueue n] [-recognizeQueue n] [-writeQueue n] [-virtualThreads true|false] [-recursive true|false]
+ * [-encoding e] [-format text|binary]
+ *
+ * @author xuke
+ *
+ */
+public class StagedPipeline {
+  private final EntityRecognizer recognizer;
+  private final DocumentLoader loader;
+  private final Metrics metrics = Metrics.get();
+
+  private int readThreads = 2;
+  private int recognizeThreads = Runtime.getRuntime().availableProcessors();
+  private int readQueueSize = 16;
+  private int recognizeQueueSize = 16;
+  private int writeQueueSize = 16;
+  private boolean virtualThreads = false;
+
+  public StagedPipeline(EntityRecognizer recognizer, DocumentLoader loader){
+    this.recognizer = recognizer;
+    this.loader = loader;
+  }
+
+  public void setReadThreads(int threads){
+    this.readThreads = Math.max(1, threads);
+  }
+
+  public void setRecognizeThreads(int threads){
+    this.recognizeThreads = Math.max(1, threads);
+  }
+
+  public void setReadQueueSize(int size){
+    this.readQueueSize = Math.max(1, size);
+  }
+
+  public void setRecognizeQueueSize(int size){
+    this.recognizeQueueSize = Math.max(1, size);
+  }
+
+  public void setWriteQueueSize(int size){
+    this.writeQueueSize = Math.max(1, size);
+  }
+
+  /**
+   * read each file on a virtual thread of its own (see VirtualThreads), so that readThreads + readQueueSize
+   * reads overlap; readThreads platform threads are used on JDKs without virtual threads.
+   */
+  public void setVirtualThreads(boolean virtual){
+    this.virtualThreads = virtual;
+  }
+
+  /**
+   * recognize the entities of every file and write them to writer, in the order of files.
+   * @return the number of documents processed.
+   * @throws IOException the first error of any stage, once all other documents are written.
+   */
+  public long run(Iterator<File> files, EntityWriter writer) throws IOException, InterruptedException{
+    final BlockingQueue<StagedDocument> recognizeQueue =
+            new ArrayBlockingQueue<StagedDocument>(recognizeQueueSize);
+    final BlockingQueue<StagedDocument> writeQueue = new ArrayBlockingQueue<StagedDocument>(writeQueueSize);
+    // documents anywhere in the pipeline, so that those the writer holds back for ordering are bounded too
+    final Semaphore window = new Semaphore(readThreads + readQueueSize + recognizeQueueSize
+            + recognizeThreads + writeQueueSize);
+
+    List<Thread> recognizers = new ArrayList<Thread>();
+    for(int k = 0; k < recognizeThreads; k++){
+      Thread t = new Thread(new Runnable(){
+        public void run(){
+          recognize(recognizeQueue, writeQueue);
+        }
+      }, "pipeline-recognize-" + k);
+      t.setDaemon(true);
+      t.start();
+      recognizers.add(t);
+    }
+
+    ExecutorService readers = virtualThreads ? VirtualThreads.newExecutor("pipeline-read", readThreads)
+            : Executors.newFixedThreadPool(readThreads, VirtualThreads.daemonThreads("pipeline-read"));
+    Thread feeder = new Thread(new Feeder(files, readers, recognizeQueue, writeQueue, window), "pipeline-feed");
+    feeder.setDaemon(true);
+    feeder.start();
+
+    try{
+      return write(writeQueue, window, writer);
+    }
+    finally{
+      feeder.interrupt();
+      readers.shutdownNow();
+      for(Thread t : recognizers)
+        t.interrupt();
+    }
+  }
+
+  /*
+   * loop of a recognize thread.
+   */
+  private void recognize(BlockingQueue<StagedDocument> in, BlockingQueue<StagedDocument> out){
+    try{
+      while(true){
+        StagedDocument doc = in.take();
+        if(doc.getError() == null){
+          String text = doc.getText();
+          long start = System.nanoTime();
+          try{
+            doc.setEntities(recognizer.recognizeEntities(text));
+          }
+          catch(RuntimeException e){
+            doc.setError(new IOException("Cannot recognize " + doc.getFile(), e));
+          }
+          metrics.record(Metrics.ANNOTATE, System.nanoTime() - start);
+          metrics.add(Metrics.DOCUMENTS, 1);
+          metrics.add(Metrics.CHARACTERS, text == null ? 0 : text.length());
+        }
+        out.put(doc);
+      }
+    }
+    catch(InterruptedException e){
+      // the pipeline is done
+    }
+  }
+
+  /*
+   * the write stage, run by the calling thread: writes documents in sequence order until the end
+   * marker of the feeder is reached.
+   */
+  private long write(BlockingQueue<StagedDocument> in, Semaphore window, EntityWriter writer)
+          throws IOException, InterruptedException{
+    TreeMap<Long, StagedDocument> waiting = new TreeMap<Long, StagedDocument>();
+    IOException error = null;
+    long next = 0;
+
+    while(true){
+      StagedDocument doc = in.take();
+      waiting.put(doc.getSequence(), doc);
+
+      while(!waiting.isEmpty() && waiting.firstKey() == next){
+        doc = waiting.remove(next);
+        if(doc.isEnd()){
+          if(doc.getError() != null && error == null)
+            error = doc.getError();
+          if(error != null)
+            throw error;
+          return next;
+        }
+
+        if(doc.getError() != null){
+          if(error == null)
+            error = doc.getError();
+        }
+        else{
+          long start = System.nanoTime();
+          for(MyAnnotation ann : doc.getEntities())
+            writer.write(ann.getSentenceID(), ann.getBegin(), ann.getEnd(), ann.getName());
+          metrics.add(Metrics.ENTITIES_WRITTEN, doc.getEntities().size());
+          metrics.record(Metrics.WRITE, System.nanoTime() - start);
+        }
+        next++;
+        window.release();
+      }
+    }
+  }
+
+  /*
+   * lists the files, numbering them, and hands each to a reader. Ends by passing the writer a marker
+   * numbered after the last file.
+   */
+  private class Feeder implements Runnable {
+    private final Iterator<File> files;
+    private final ExecutorService readers;
+    private final BlockingQueue<StagedDocument> recognizeQueue;
+    private final BlockingQueue<StagedDocument> writeQueue;
+    private final Semaphore window;
+    private final Semaphore readSlots = new Semaphore(readThreads + readQueueSize);
+
+    Feeder(Iterator<File> files, ExecutorService readers, BlockingQueue<StagedDocument> recognizeQueue,
+            BlockingQueue<StagedDocument> writeQueue, Semaphore window){
+      this.files = files;
+      this.readers = readers;
+      this.recognizeQueue = recognizeQueue;
+      this.writeQueue = writeQueue;
+      this.window = window;
+    }
+
+    public void run(){
+      long sequence = 0;
+      IOException error = null;
+      try{
+        while(files.hasNext()){
+          final File file = files.next();
+          final StagedDocument doc = new StagedDocument(sequence++, file);
+          window.acquire();
+          readSlots.acquire();
+          readers.execute(new Runnable(){
+            public void run(){
+              read(doc);
+            }
+          });
+        }
+      }
+      catch(InterruptedException e){
+        return;
+      }
+      catch(RuntimeException e){
+        // e.g. a directory which cannot be listed
+        error = new IOException("Cannot list the input files", e);
+      }
+
+      StagedDocument end = StagedDocument.end(sequence);
+      end.setError(error);
+      try{
+        writeQueue.put(end);
+      }
+      catch(InterruptedException e){
+        // the pipeline is done
+      }
+    }
+
+    private void read(StagedDocument doc){
+      long start = System.nanoTime();
+      try{
+        doc.setText(loader.load(doc.getFile()));
+      }
+      catch(IOException e){
+        doc.setError(e);
+      }
+      metrics.record(Metrics.READ, System.nanoTime() - start);
+
+      try{
+        // a failed document skips the recognizers
+        if(doc.getError() == null)
+          recognizeQueue.put(doc);
+        else
+          writeQueue.put(doc);
+      }
+      catch(InterruptedException e){
+        // the pipeline is done
+      }
+      finally{
+        readSlots.release();
+      }
+    }
+  }
+
+  private static String option(String [] args, String name, String def){
+    for(int k = 2; k + 1 < args.length; k += 2){
+      if(args[k].equals(name))
+        return args[k + 1];
+    }
+    return def;
+  }
+
+  private static int option(String [] args, String name, int def){
+    return Integer.parseInt(option(args, name, String.valueOf(def)));
+  }
+
+  public static void main(String [] args) throws Exception{
+    if(args.length < 2 || args.length % 2 != 0){
+      System.out.println(" Arguments to the program are as follows : \n"
+              + "args[0] : input directory (or file)\n"
+              + "args[1] : output file\n"
+              + "-readThreads n -recognizeThreads n : threads of the read and recognize stages\n"
+              + "-readQueue n -recognizeQueue n -writeQueue n : documents waiting for each stage\n"
+              + "-virtualThreads true|false : read each file on a virtual thread\n"
+              + "-recursive true|false -encoding e -format text|binary");
+      System.exit(2);
+    }
+
+    EntityRecognizer recognizer = GeneNameAnnotator.sharedRecognizer(
+            DictionaryResource_impl.load(DictionarySnapshot.defaultLocation()));
+    DocumentLoader loader = new DocumentLoader(option(args, "-encoding", null), 1 << 20);
+    StagedPipeline pipeline = new StagedPipeline(recognizer, loader);
+    pipeline.setReadThreads(option(args, "-readThreads", pipeline.readThreads));
+    pipeline.setRecognizeThreads(option(args, "-recognizeThreads", pipeline.recognizeThreads));
+    pipeline.setReadQueueSize(option(args, "-readQueue", pipeline.readQueueSize));
+    pipeline.setRecognizeQueueSize(option(args, "-recognizeQueue", pipeline.recognizeQueueSize));
+    pipeline.setWriteQueueSize(option(args, "-writeQueue", pipeline.writeQueueSize));
+    pipeline.setVirtualThreads(Boolean.parseBoolean(option(args, "-virtualThreads", "false")));
+
+    FileWalker files = new FileWalker(new File(args[0]),
+            Boolean.parseBoolean(option(args, "-recursive", "false")), true, null, null);
+    EntityWriter writer = EntityWriter.open(new File(args[1]), option(args, "-format", EntityWriter.FORMAT_TEXT),
+            option(args, "-encoding", null), 1000);
+
+    long start = System.currentTimeMillis();
+    long documents;
+    try{
+      documents = pipeline.run(files, writer);
+    }
+    finally{
+      writer.close();
+      files.close();
+    }
+    long time = Math.max(1, System.currentTimeMillis() - start);
+    System.out.println("Completed " + documents + " documents in " + time + " ms");
+    System.out.print(Metrics.get().getJson());
+  }
+}
+
+
+/*
+ * a document moving through StagedPipeline, or the end marker numbered after the last document.
+ */
+class StagedDocument {
+private final long sequence;
+private final File file;
+private volatile String text;
+private volatile List<MyAnnotation> entities;
+private volatile IOException error;
+
+StagedDocument(long sequence, File file){
+ this.sequence = sequence;
+ this.file = file;
+}
+
+static StagedDocument end(long sequence){
+ return new StagedDocument(sequence, null);
+}
+
+public boolean isEnd(){
+ return file == null;
+}
+
+public long getSequence(){
+ return sequence;
+}
+
+public File getFile(){
+ return file;
+}
+
+public String getText(){
+ return text;
+}
+
+public void setText(String text){
+ this.text = text;
+}
+
+public List<MyAnnotation> getEntities(){
+ return entities;
+}
+
+public void setEntities(List<MyAnnotation> entities){
+ this.entities = entities;
+ // the text is not needed any more while the document waits for the writer
+ this.text = null;
+}
+
+public IOException getError(){
+ return error;
+}
+
+public void setError(IOException error){
+ this.error = error;
+}
+}
@@ -0,0 +1,59 @@
+import edu.stanford.nlp.process.Morphology;
+
+/**
+ * A bounded cache in front of Morphology.stem(). The vocabulary of a corpus (and of the dictionaries)
+ * is highly repetitive, so most words are stemmed only once. Morphology is not thread-safe, so every
+ * thread computing a missing stem uses its own instance.
+ * 
+ * @author xuke
+ *
+ */
+public class StemCache {
+  /* default number of cached stems */
+  public static final int DEFAULT_SIZE = 100000;
+  
+  private final ConcurrentLruCache<String, String> cache;
+  
+  private final ThreadLocal<Morphology> morphology = new ThreadLocal<Morphology>(){
+    protected Morphology initialValue(){
+      return new Morphology();
+    }
+  };
+  
+  public StemCache(){
+    this(DEFAULT_SIZE);
+  }
+  
+  /**
+   * @param size maximum number of cached stems; 0 stems every word.
+   */
+  public StemCache(int size){
+    cache = new ConcurrentLruCache<String, String>(size);
+  }
+  
+  /**
+   * @return the same as new Morphology().stem(word).
+   */
+  public String stem(String word){
+    if(word == null)
+      return null;
+    
+    String stem = cache.get(word);
+    if(stem == null){
+      stem = morphology.get().stem(word);
+      cache.put(word, stem);
+    }
+    return stem;
+  }
+  
+  /**
+   * @return the underlying cache, for its size and hit statistics.
+   */
+  public ConcurrentLruCache<String, String> getCache(){
+    return cache;
+  }
+  
+  public String toString(){
+    return "stem cache: " + cache;
+  }
+}
@@ -0,0 +1,75 @@
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The VirtualThreads class gives the blocking reads of the reader a thread per operation: virtual
+ * threads when the JDK has them (21 and later), found by reflection since the project is compiled for
+ * older JDKs, and a pool of platform daemon threads otherwise. Thousands of outstanding reads then
+ * overlap without sizing a pool for them; the callers bound how many are in flight.
+ *
+ * @author xuke
+ *
+ */
+public class VirtualThreads {
+  // Executors.newVirtualThreadPerTaskExecutor(), or null before JDK 21
+  private static final Method newVirtualExecutor = find();
+
+  private VirtualThreads(){
+  }
+
+  private static Method find(){
+    try{
+      return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+    }
+    catch(NoSuchMethodException e){
+      return null;
+    }
+    catch(SecurityException e){
+      return null;
+    }
+  }
+
+  /**
+   * @return whether this JDK runs virtual threads.
+   */
+  public static boolean isAvailable(){
+    return newVirtualExecutor != null;
+  }
+
+  /**
+   * an executor running each task on a new virtual thread, or, without virtual threads, on a pool of
+   * fallbackThreads daemon threads (a pool growing as needed if fallbackThreads is 0) named after name.
+   */
+  public static ExecutorService newExecutor(String name, int fallbackThreads){
+    if(newVirtualExecutor != null){
+      try{
+        return (ExecutorService) newVirtualExecutor.invoke(null);
+      }
+      catch(Exception e){
+        System.out.println("Cannot start virtual threads, using platform threads: " + e);
+      }
+    }
+
+    ThreadFactory factory = daemonThreads(name);
+    return fallbackThreads > 0 ? Executors.newFixedThreadPool(fallbackThreads, factory)
+            : Executors.newCachedThreadPool(factory);
+  }
+
+  /**
+   * a factory of daemon threads named name-1, name-2, ...
+   */
+  public static ThreadFactory daemonThreads(final String name){
+    return new ThreadFactory(){
+      private final AtomicInteger count = new AtomicInteger();
+
+      public Thread newThread(Runnable r){
+        Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      }
+    };
+  }
+}
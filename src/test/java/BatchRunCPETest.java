@@ -0,0 +1,50 @@
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * How BatchRunCPE sizes the processing threads and the CAS pool.
+ *
+ * @author xuke
+ *
+ */
+public class BatchRunCPETest {
+  private static final long MB = 1 << 20;
+
+  @Test
+  public void testThreadsLeaveACoreToTheReader(){
+    assertEquals(7, BatchRunCPE.autoThreads(8, Long.MAX_VALUE, 256));
+    assertEquals(1, BatchRunCPE.autoThreads(2, Long.MAX_VALUE, 256));
+    assertEquals(1, BatchRunCPE.autoThreads(1, Long.MAX_VALUE, 256));
+  }
+
+  @Test
+  public void testThreadsFitInTheHeap(){
+    assertEquals(4, BatchRunCPE.autoThreads(16, 1024 * MB, 256));
+    assertEquals(3, BatchRunCPE.autoThreads(16, 1023 * MB, 256));
+    assertEquals(7, BatchRunCPE.autoThreads(8, 64 * 1024 * MB, 256));
+    // never less than one thread, however small the heap
+    assertEquals(1, BatchRunCPE.autoThreads(8, 100 * MB, 256));
+    // no heap limit assumed
+    assertEquals(15, BatchRunCPE.autoThreads(16, 1024 * MB, 0));
+  }
+
+  @Test
+  public void testCasPool(){
+    assertEquals(9, BatchRunCPE.casPoolSize(7, 0));
+    assertEquals(3, BatchRunCPE.casPoolSize(1, 0));
+    assertEquals(12, BatchRunCPE.casPoolSize(7, 12));
+    // a thread without a CAS would only wait
+    assertEquals(7, BatchRunCPE.casPoolSize(7, 2));
+  }
+
+  @Test
+  public void testArguments(){
+    BatchRunCPE runner = new BatchRunCPE();
+    assertTrue(runner.parseArguments(new String [] {"cpe.xml", "-threads", "3", "-heapPerThreadMB", "0"}));
+    assertFalse(new BatchRunCPE().parseArguments(new String [] {"-threads"}));
+    assertFalse(new BatchRunCPE().parseArguments(new String [] {"-threads", "-1"}));
+    assertFalse(new BatchRunCPE().parseArguments(new String [] {"-threads", "x"}));
+    assertFalse(new BatchRunCPE().parseArguments(new String [] {"-cores", "2"}));
+  }
+}
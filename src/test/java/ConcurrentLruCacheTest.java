@@ -0,0 +1,44 @@
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * The bounds and counters of ConcurrentLruCache.
+ *
+ * @author xuke
+ *
+ */
+public class ConcurrentLruCacheTest {
+  @Test
+  public void testCapacityIsExact(){
+    for(int capacity : new int[] { 1, 2, 5, 15, 16, 17, 100, 1000 }){
+      ConcurrentLruCache<Integer, String> cache = new ConcurrentLruCache<Integer, String>(capacity);
+      for(int k = 0; k < 10 * capacity + 50; k++)
+        cache.put(k, "v" + k);
+      assertEquals(capacity, cache.getCapacity());
+      assertEquals("capacity " + capacity, capacity, cache.size());
+    }
+  }
+
+  @Test
+  public void testLeastRecentlyUsedIsEvicted(){
+    ConcurrentLruCache<Integer, String> cache = new ConcurrentLruCache<Integer, String>(1);
+    cache.put(1, "a");
+    assertEquals("a", cache.get(1));
+    cache.put(2, "b");
+    assertNull(cache.get(1));
+    assertEquals("b", cache.get(2));
+    assertEquals(2, cache.getHits());
+    assertEquals(1, cache.getMisses());
+    assertEquals(1, cache.getEvictions());
+  }
+
+  @Test
+  public void testZeroCapacityCachesNothing(){
+    ConcurrentLruCache<Integer, String> cache = new ConcurrentLruCache<Integer, String>(0);
+    cache.put(1, "a");
+    assertNull(cache.get(1));
+    assertEquals(0, cache.size());
+    assertEquals(1, cache.getMisses());
+  }
+}
@@ -0,0 +1,168 @@
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Round trips of DictionaryCompiler and DictionarySnapshot over the small dictionaries of
+ * src/test/resources/testdictionary, and lookups in their Lexicon and PhraseTrie.
+ *
+ * @author xuke
+ *
+ */
+public class DictionarySnapshotTest {
+  static final String TEST_DICTIONARY = "/testdictionary/";
+
+  private File file;
+
+  /**
+   * the snapshot of the test dictionaries, kept in memory.
+   */
+  static DictionarySnapshot testSnapshot() throws IOException{
+    return new DictionarySnapshot(ByteBuffer.wrap(new DictionaryCompiler(TEST_DICTIONARY).compile(42)));
+  }
+
+  @Before
+  public void setUp() throws IOException{
+    file = File.createTempFile("dictionary", ".snapshot");
+  }
+
+  @After
+  public void tearDown(){
+    file.delete();
+  }
+
+  @Test
+  public void testMappedSnapshotMatchesCompiledOne() throws IOException{
+    byte [] data = new DictionaryCompiler(TEST_DICTIONARY).compile(42);
+    DictionaryCompiler.write(data, file);
+    assertEquals(data.length, file.length());
+
+    DictionarySnapshot mapped = DictionarySnapshot.map(file);
+    DictionarySnapshot wrapped = new DictionarySnapshot(ByteBuffer.wrap(data));
+    assertEquals(42, mapped.getFingerprint());
+    assertSameEntries(wrapped.getSingleKnownEntities(), mapped.getSingleKnownEntities());
+    assertSameEntries(wrapped.getAllKnownEntities(), mapped.getAllKnownEntities());
+    assertSameEntries(wrapped.getFullDictionary(), mapped.getFullDictionary());
+    assertSameEntries(wrapped.getCommonWords(), mapped.getCommonWords());
+  }
+
+  private static void assertSameEntries(Lexicon expected, Lexicon actual){
+    assertEquals(expected.size(), actual.size());
+    for(int k = 0; k < expected.size(); k++)
+      assertEquals(expected.get(k), actual.get(k));
+  }
+
+  @Test
+  public void testSections() throws IOException{
+    DictionarySnapshot dic = testSnapshot();
+
+    // first words of the gene terms as they are written
+    assertTrue(dic.getSingleKnownEntities().contains("BRCA1"));
+    assertTrue(dic.getSingleKnownEntities().contains("tumor"));
+    assertFalse(dic.getSingleKnownEntities().contains("brca1"));
+    assertFalse(dic.getSingleKnownEntities().contains("necrosis"));
+
+    // every word of the gene terms, in lower case
+    assertTrue(dic.getAllKnownEntities().contains("brca1"));
+    assertTrue(dic.getAllKnownEntities().contains("necrosis"));
+    assertFalse(dic.getAllKnownEntities().contains("BRCA1"));
+
+    assertTrue(dic.getFullDictionary().contains("growth"));
+    assertTrue(dic.getCommonWords().contains("protein"));
+    assertTrue(dic.getCommonWords().contains("Scarlett"));
+    // full dictionary words are common unless they are part of a gene term
+    assertTrue(dic.getCommonWords().contains("growth"));
+    assertFalse(dic.getCommonWords().contains("receptor"));
+  }
+
+  @Test
+  public void testLexiconIsSorted() throws IOException{
+    Lexicon words = testSnapshot().getAllKnownEntities();
+    for(int k = 0; k < words.size(); k++){
+      assertEquals(k, words.indexOf(words.get(k)));
+      if(k > 0)
+        assertTrue(words.get(k - 1).compareTo(words.get(k)) < 0);
+    }
+    assertEquals(-1, words.indexOf("missing"));
+    assertEquals(-1, words.indexOf(null));
+  }
+
+  @Test
+  public void testContainsLowerCase() throws IOException{
+    Lexicon words = testSnapshot().getAllKnownEntities();
+    assertTrue(words.containsLowerCase("BRCA1"));
+    assertTrue(words.containsLowerCase("Brca1"));
+    assertTrue(words.containsLowerCase("brca1"));
+    assertTrue(words.containsLowerCase(new StringBuilder("IL-2")));
+    assertFalse(words.containsLowerCase("BRCA2"));
+    assertFalse(words.containsLowerCase(""));
+    assertFalse(words.containsLowerCase(null));
+    assertEquals(words.indexOf("p53"), words.indexOfLowerCase("P53"));
+
+    String text = "the TUMOR grows";
+    assertEquals(words.indexOf("tumor"), words.indexOf(text, 4, 9, true));
+    assertEquals(-1, words.indexOf(text, 4, 9, false));
+    assertEquals(-1, words.indexOf(text, 4, 8, true));
+  }
+
+  @Test
+  public void testPhraseTrie() throws IOException{
+    DictionarySnapshot dic = testSnapshot();
+    Lexicon words = dic.getAllKnownEntities();
+    PhraseTrie phrases = dic.getPhrases();
+
+    int tumor = phrases.child(PhraseTrie.ROOT, words.indexOf("tumor"));
+    assertTrue(tumor > PhraseTrie.ROOT);
+    assertFalse(phrases.isTerminal(tumor));
+    int necrosis = phrases.child(tumor, words.indexOf("necrosis"));
+    assertTrue(necrosis > PhraseTrie.ROOT);
+    assertFalse(phrases.isTerminal(necrosis));
+    int factor = phrases.child(necrosis, words.indexOf("factor"));
+    assertTrue(phrases.isTerminal(factor));
+
+    int insulin = phrases.child(PhraseTrie.ROOT, words.indexOf("insulin"));
+    assertTrue(phrases.isTerminal(phrases.child(insulin, words.indexOf("receptor"))));
+
+    // single word terms and words out of order are not phrases
+    assertEquals(-1, phrases.child(PhraseTrie.ROOT, words.indexOf("brca1")));
+    assertEquals(-1, phrases.child(PhraseTrie.ROOT, words.indexOf("necrosis")));
+    assertEquals(-1, phrases.child(tumor, words.indexOf("factor")));
+    assertEquals(-1, phrases.child(PhraseTrie.ROOT, -1));
+  }
+
+  @Test
+  public void testFingerprintDependsOnContents(){
+    long fingerprint = DictionaryCompiler.fingerprint(TEST_DICTIONARY);
+    assertEquals(fingerprint, DictionaryCompiler.fingerprint(TEST_DICTIONARY));
+    assertFalse(fingerprint == DictionaryCompiler.fingerprint("/missing/"));
+    assertFalse(fingerprint == DictionaryCompiler.fingerprint(DictionaryCompiler.DICTIONARY_DIR));
+  }
+
+  @Test
+  public void testCorruptSnapshotIsRejected() throws IOException{
+    byte [] data = new DictionaryCompiler(TEST_DICTIONARY).compile(42);
+    byte [] truncated = new byte[data.length / 2];
+    System.arraycopy(data, 0, truncated, 0, truncated.length);
+    try{
+      new DictionarySnapshot(ByteBuffer.wrap(truncated));
+      fail("a truncated snapshot must not be mapped");
+    }
+    catch(IOException e){
+      // expected
+    }
+
+    data[4]++;  // version
+    try{
+      new DictionarySnapshot(ByteBuffer.wrap(data));
+      fail("a snapshot of another version must not be mapped");
+    }
+    catch(IOException e){
+      // expected
+    }
+  }
+}
@@ -0,0 +1,202 @@
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * DocumentLoader: the text of memory-mapped files, and the segments files are split into.
+ *
+ * @author xuke
+ *
+ */
+public class DocumentLoaderTest {
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private File file;
+
+  @Before
+  public void setUp() throws IOException{
+    file = File.createTempFile("document", ".txt");
+  }
+
+  @After
+  public void tearDown(){
+    file.delete();
+  }
+
+  private void write(byte [] bytes) throws IOException{
+    OutputStream out = new FileOutputStream(file);
+    out.write(bytes);
+    out.close();
+  }
+
+  @Test
+  public void testMappedFileIsDecoded() throws IOException{
+    // one, two, three and four bytes per code point
+    String text = "P00001 \u03b1-synuclein binds \u4e2d \ud83e\uddec\nP00002 second line\n";
+    write(text.getBytes(UTF8));
+    assertEquals(text, new DocumentLoader("UTF-8", 0).load(file));
+  }
+
+  @Test
+  public void testMappedMalformedBytesAreReplaced() throws IOException{
+    write(new byte [] {'a', (byte) 0xff, 'b', (byte) 0xc3});
+    assertEquals("a\ufffdb\ufffd", new DocumentLoader("UTF-8", 0).load(file));
+  }
+
+  @Test
+  public void testMappedEmptyFile() throws IOException{
+    assertEquals("", new DocumentLoader("UTF-8", 0).load(file));
+  }
+
+  @Test
+  public void testOverflowIsIOException(){
+    ByteBuffer bytes = ByteBuffer.wrap("abcdef".getBytes(UTF8));
+    try{
+      DocumentLoader.decode(bytes, UTF8.newDecoder().onMalformedInput(CodingErrorAction.REPLACE), 3, file);
+      fail("a text longer than the buffer must not be cut");
+    }
+    catch(IOException e){
+      assertTrue(e.getMessage(), e.getMessage().contains(file.toString()));
+    }
+  }
+
+  /*
+   * all segments of file, split by lines and chars.
+   */
+  private List<Segment> segments(int lines, int chars) throws IOException{
+    DocumentLoader loader = new DocumentLoader("UTF-8", -1);
+    loader.setSegmentation(lines, chars);
+    SegmentReader reader = loader.segments(file);
+    List<Segment> segments = new ArrayList<Segment>();
+    Segment segment;
+    while((segment = reader.next()) != null)
+      segments.add(segment);
+    assertTrue(reader.isFinished());
+    return segments;
+  }
+
+  /*
+   * lines "line 1" ... "line n", each ending with '\n'.
+   */
+  private static String lines(int n){
+    StringBuilder text = new StringBuilder();
+    for(int k = 1; k <= n; k++)
+      text.append("line ").append(k).append('\n');
+    return text.toString();
+  }
+
+  @Test
+  public void testSplitByLines() throws IOException{
+    write(lines(7).getBytes(UTF8));
+    List<Segment> segments = segments(3, 0);
+
+    assertEquals(3, segments.size());
+    assertEquals("line 1\nline 2\nline 3\n", segments.get(0).getText());
+    assertEquals("line 4\nline 5\nline 6\n", segments.get(1).getText());
+    int [] firstLines = {1, 4, 7};
+    for(int k = 0; k < segments.size(); k++){
+      assertEquals(firstLines[k], segments.get(k).getFirstLine());
+      assertEquals(k, segments.get(k).getIndex());
+      assertEquals(k == segments.size() - 1, segments.get(k).isLast());
+    }
+
+    // the last, shorter segment
+    Segment last = segments.get(2);
+    assertEquals("line 7\n", last.getText());
+    assertEquals(file, last.getFile());
+  }
+
+  @Test
+  public void testSplitEndingAtSegmentBoundary() throws IOException{
+    write(lines(6).getBytes(UTF8));
+    List<Segment> segments = segments(3, 0);
+    assertEquals(2, segments.size());
+    assertEquals(4, segments.get(1).getFirstLine());
+    assertTrue(segments.get(1).isLast());
+  }
+
+  @Test
+  public void testSplitByCharsNeverSplitsLines() throws IOException{
+    String longLine = "a line longer than a whole segment";
+    write(("short\n" + "shorter\n" + longLine + "\n" + "tiny\n" + "x\n").getBytes(UTF8));
+    List<Segment> segments = segments(0, 16);
+
+    StringBuilder text = new StringBuilder();
+    int line = 1;
+    for(Segment segment : segments){
+      assertEquals(line, segment.getFirstLine());
+      assertTrue(segment.getText().endsWith("\n"));
+      int count = segment.getText().split("\n").length;
+      // a segment over the limit is a single line
+      assertTrue(segment.getText(), segment.getText().length() <= 16 || count == 1);
+      line += count;
+      text.append(segment.getText());
+    }
+    assertEquals("short\nshorter\n", segments.get(0).getText());
+    assertEquals(longLine + "\n", segments.get(1).getText());
+    assertEquals("tiny\nx\n", segments.get(2).getText());
+    assertEquals("short\nshorter\n" + longLine + "\ntiny\nx\n", text.toString());
+  }
+
+  @Test
+  public void testSplitByLinesAndChars() throws IOException{
+    write(lines(5).getBytes(UTF8));
+    // "line k\n" is 7 chars, so 2 lines fit in 15 chars before 3 lines are reached
+    List<Segment> segments = segments(3, 15);
+    assertEquals(3, segments.size());
+    assertEquals("line 5\n", segments.get(2).getText());
+    assertEquals(5, segments.get(2).getFirstLine());
+  }
+
+  @Test
+  public void testEmptyFileIsOneLastSegment() throws IOException{
+    List<Segment> segments = segments(3, 0);
+    assertEquals(1, segments.size());
+    assertEquals("", segments.get(0).getText());
+    assertTrue(segments.get(0).isLast());
+  }
+
+  /*
+   * readLine() only ends lines at '\n', '\r' and "\r\n", while the Scanner of EntityRecognizer also
+   * ends them at U+2028, U+2029 and U+0085. A segment therefore never cuts a line the recognizer sees,
+   * and the recognizer sees the same lines in the segments as in the file, only numbered differently
+   * by getFirstLine().
+   */
+  @Test
+  public void testUnicodeLineSeparatorsStayInTheirSegment() throws IOException{
+    String text = "a\u2028b\r\nc\u0085d\re\u2029f\ng\n";
+    write(text.getBytes(UTF8));
+    List<Segment> segments = segments(1, 0);
+
+    assertEquals(4, segments.size());
+    assertEquals("a\u2028b\n", segments.get(0).getText());
+    assertEquals("c\u0085d\n", segments.get(1).getText());
+    assertEquals("e\u2029f\n", segments.get(2).getText());
+    assertEquals(4, segments.get(3).getFirstLine());
+
+    List<String> segmented = new ArrayList<String>();
+    for(Segment segment : segments)
+      segmented.addAll(scannerLines(segment.getText()));
+    assertEquals(scannerLines(text), segmented);
+    assertEquals(7, segmented.size());
+  }
+
+  private static List<String> scannerLines(String text){
+    List<String> lines = new ArrayList<String>();
+    Scanner sc = new Scanner(text);
+    while(sc.hasNextLine())
+      lines.add(sc.nextLine());
+    sc.close();
+    return lines;
+  }
+}
@@ -0,0 +1,176 @@
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The shards of EntityOutput and their k-way merge.
+ *
+ * @author xuke
+ *
+ */
+public class EntityOutputTest {
+  private static final int SHARDS = 3;
+
+  private File file;
+
+  @Before
+  public void setUp() throws IOException{
+    file = File.createTempFile("entities", ".out");
+  }
+
+  @After
+  public void tearDown(){
+    file.delete();
+    for(int s = 0; s < SHARDS; s++)
+      EntityOutput.shardFile(file, s).delete();
+  }
+
+  /*
+   * documents of a few entities each, whose sentence IDs are not in order across documents.
+   */
+  private List<List<MyAnnotation>> documents(){
+    List<List<MyAnnotation>> docs = new ArrayList<List<MyAnnotation>>();
+    for(int d = 0; d < 20; d++){
+      List<MyAnnotation> doc = new ArrayList<MyAnnotation>();
+      String sentenceID = "P" + ((d * 7) % 20 + 100);
+      for(int k = 0; k < 3; k++)
+        doc.add(EntityWriterReaderTest.entity(sentenceID, k * 10, k * 10 + 4, "GENE" + d + "." + k));
+      docs.add(doc);
+    }
+    return docs;
+  }
+
+  /*
+   * the entities of docs ordered by sentence ID, in the order they were written within a sentence.
+   */
+  private List<MyAnnotation> sorted(List<List<MyAnnotation>> docs){
+    List<MyAnnotation> all = new ArrayList<MyAnnotation>();
+    for(List<MyAnnotation> doc : docs)
+      all.addAll(doc);
+    Collections.sort(all, new Comparator<MyAnnotation>(){
+      public int compare(MyAnnotation a, MyAnnotation b){
+        return a.getSentenceID().compareTo(b.getSentenceID());
+      }
+    });
+    return all;
+  }
+
+  /*
+   * write docs through SHARDS replicas, each document to the shard of its replica.
+   */
+  private void write(String format, boolean writeBehind, List<List<MyAnnotation>> docs) throws IOException{
+    List<EntityOutput> replicas = new ArrayList<EntityOutput>();
+    List<EntityWriter> shards = new ArrayList<EntityWriter>();
+    for(int r = 0; r < SHARDS; r++){
+      EntityOutput output = EntityOutput.acquire(file, format, "UTF-8", SHARDS, true, 0, writeBehind);
+      replicas.add(output);
+      shards.add(output.nextShard());
+    }
+    assertSame(replicas.get(0), replicas.get(SHARDS - 1));
+    assertEquals(SHARDS, replicas.get(0).getShardCount());
+
+    for(int d = 0; d < docs.size(); d++){
+      EntityOutput output = replicas.get(d % SHARDS);
+      EntityWriter shard = shards.get(d % SHARDS);
+      if(output.isWriteBehind()){
+        output.write(shard, docs.get(d));
+      }
+      else{
+        for(MyAnnotation ann : docs.get(d))
+          shard.write(ann.getSentenceID(), ann.getBegin(), ann.getEnd(), ann.getName());
+      }
+    }
+
+    // only the last release completes the file
+    for(int r = 0; r < SHARDS; r++)
+      assertEquals(r == SHARDS - 1, replicas.get(r).release());
+  }
+
+  private void checkMerged(String format, boolean writeBehind) throws IOException{
+    List<List<MyAnnotation>> docs = documents();
+    write(format, writeBehind, docs);
+
+    assertEquals(EntityWriterReaderTest.format(sorted(docs)),
+            EntityWriterReaderTest.format(EntityReader.readAll(file, "UTF-8")));
+    for(int s = 0; s < SHARDS; s++)
+      assertFalse(EntityOutput.shardFile(file, s).exists());
+  }
+
+  @Test
+  public void testMergeText() throws IOException{
+    checkMerged(EntityWriter.FORMAT_TEXT, false);
+  }
+
+  @Test
+  public void testMergeBinary() throws IOException{
+    checkMerged(EntityWriter.FORMAT_BINARY, false);
+  }
+
+  @Test
+  public void testMergeWriteBehind() throws IOException{
+    checkMerged(EntityWriter.FORMAT_BINARY, true);
+  }
+
+  @Test
+  public void testSentenceSplitAcrossShards() throws IOException{
+    // a sentence whose entities went to every shard keeps them in shard order
+    List<List<MyAnnotation>> docs = new ArrayList<List<MyAnnotation>>();
+    for(int d = 0; d < SHARDS; d++){
+      List<MyAnnotation> doc = new ArrayList<MyAnnotation>();
+      doc.add(EntityWriterReaderTest.entity("P2", d, d + 1, "B" + d));
+      doc.add(EntityWriterReaderTest.entity("P1", d, d + 1, "A" + d));
+      docs.add(doc);
+    }
+    write(EntityWriter.FORMAT_TEXT, false, docs);
+
+    assertEquals("P1|0 1|A0\nP1|1 2|A1\nP1|2 3|A2\nP2|0 1|B0\nP2|1 2|B1\nP2|2 3|B2\n",
+            EntityWriterReaderTest.format(EntityReader.readAll(file, "UTF-8")));
+  }
+
+  @Test
+  public void testReleasedOutputIsReopened() throws IOException{
+    write(EntityWriter.FORMAT_TEXT, false, documents());
+
+    // the next run truncates the file instead of appending to the merged one
+    List<List<MyAnnotation>> docs = new ArrayList<List<MyAnnotation>>();
+    docs.add(documents().get(0));
+    write(EntityWriter.FORMAT_TEXT, false, docs);
+    assertEquals(EntityWriterReaderTest.format(docs.get(0)),
+            EntityWriterReaderTest.format(EntityReader.readAll(file, "UTF-8")));
+  }
+
+  @Test
+  public void testWriteBehindQueueBoundedByEntities() throws Exception{
+    EntityWriter shard = EntityWriter.open(file, EntityWriter.FORMAT_TEXT, "UTF-8", 0);
+    ShardWriteBehind writeBehind = new ShardWriteBehind(shard, 4);
+    Thread writer = new Thread(writeBehind);
+    writer.start();
+
+    // documents larger than the queue, empty ones and small ones all get through, in order
+    List<List<MyAnnotation>> docs = new ArrayList<List<MyAnnotation>>();
+    for(int size : new int[] { 10, 0, 1, 4, 3, 25, 2 }){
+      List<MyAnnotation> doc = new ArrayList<MyAnnotation>();
+      for(int k = 0; k < size; k++)
+        doc.add(EntityWriterReaderTest.entity("P" + docs.size(), k, k + 1, "G" + k));
+      docs.add(doc);
+      writeBehind.submit(doc);
+    }
+    writeBehind.finish();
+    writer.join();
+    shard.close();
+
+    List<MyAnnotation> all = new ArrayList<MyAnnotation>();
+    for(List<MyAnnotation> doc : docs)
+      all.addAll(doc);
+    assertEquals(EntityWriterReaderTest.format(all),
+            EntityWriterReaderTest.format(EntityReader.readAll(file, "UTF-8")));
+  }
+}
@@ -0,0 +1,233 @@
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * EntityRecognizer over the test dictionaries (see DictionarySnapshotTest): the parallel and staged
+ * modes must find the same entities as the sequential one.
+ *
+ * @author xuke
+ *
+ */
+public class EntityRecognizerTest {
+  private static final String [] SENTENCES = {
+    "BRCA1 regulates the expression of tumor necrosis factor in cells.",
+    "The insulin receptor binds IL-2 and p53 with a high affinity.",
+    "Scarlett was not beautiful, but the TNF level of the twins was.",
+    "Growth of Ras cells is regulated by BRCA1 and TNF .",
+    "No gene is named in this sentence.",
+  };
+
+  private final List<File> files = new ArrayList<File>();
+
+  static EntityRecognizer recognizer() throws IOException{
+    EntityRecognizer recognizer = new EntityRecognizer();
+    recognizer.initialize(DictionarySnapshotTest.testSnapshot());
+    return recognizer;
+  }
+
+  /*
+   * a document of lines 'ID sentence', sentences repeating.
+   */
+  static String document(int seed, int lines){
+    StringBuilder text = new StringBuilder();
+    for(int k = 0; k < lines; k++)
+      text.append(String.format("P%05d%04d ", seed, k)).append(SENTENCES[(seed + k * 3) % SENTENCES.length])
+          .append('\n');
+    return text.toString();
+  }
+
+  @After
+  public void tearDown(){
+    for(File file : files)
+      file.delete();
+  }
+
+  @Test
+  public void testSequentialFindsEntities() throws IOException{
+    String text = EntityWriterReaderTest.format(recognizer().recognizeEntities(document(0, 5)));
+    assertTrue(text, text.contains("|BRCA1\n"));
+    assertTrue(text, text.contains("|tumor necrosis factor\n"));
+  }
+
+  @Test
+  public void testEntitiesAreNumbered() throws IOException{
+    List<MyAnnotation> entities = recognizer().recognizeEntities(document(1, 20));
+    for(int k = 0; k < entities.size(); k++)
+      assertEquals(k + 1, entities.get(k).getID());
+  }
+
+  @Test
+  public void testLineCacheHitsWithinDocument() throws IOException{
+    String text = "P1 " + SENTENCES[0] + "\nP2 " + SENTENCES[1] + "\nP3 " + SENTENCES[0] + "\n";
+    EntityRecognizer cached = recognizer();
+    cached.setLineCacheSize(100);
+
+    List<MyAnnotation> entities = cached.recognizeEntities(text);
+    assertEquals(1, cached.getLineCache().getHits());
+    assertEquals(2, cached.getLineCache().getMisses());
+    assertEquals(EntityWriterReaderTest.format(recognizer().recognizeEntities(text)),
+            EntityWriterReaderTest.format(entities));
+    for(int k = 0; k < entities.size(); k++)
+      assertEquals(k + 1, entities.get(k).getID());
+  }
+
+  @Test
+  public void testChunksMatchSequential() throws IOException{
+    EntityRecognizer sequential = recognizer();
+    EntityRecognizer chunked = recognizer();
+    for(int chunkLines : new int[] { 1, 3, 7, 100 }){
+      chunked.setParallelChunkLines(chunkLines);
+      for(int lines : new int[] { 0, 1, 6, 50 }){
+        String text = document(lines, lines);
+        List<MyAnnotation> expected = sequential.recognizeEntities(text);
+        List<MyAnnotation> actual = chunked.recognizeEntities(text);
+        assertEquals(EntityWriterReaderTest.format(expected), EntityWriterReaderTest.format(actual));
+        for(int k = 0; k < actual.size(); k++)
+          assertEquals(k + 1, actual.get(k).getID());
+      }
+    }
+  }
+
+  @Test
+  public void testChunkFailureFailsDocument(){
+    // without dictionaries every line fails
+    EntityRecognizer broken = new EntityRecognizer();
+    broken.setParallelChunkLines(2);
+    try{
+      broken.recognizeEntities(document(0, 10));
+      fail("a failed chunk must not give an empty document");
+    }
+    catch(RuntimeException e){
+      // expected
+    }
+  }
+
+  @Test
+  public void testSequentialFailureFailsDocument(){
+    EntityRecognizer broken = new EntityRecognizer();
+    try{
+      broken.recognizeEntities(document(0, 10));
+      fail("a failed line must not give a partial document");
+    }
+    catch(RuntimeException e){
+      // expected
+    }
+  }
+
+  @Test
+  public void testConcurrentRecognitionMatchesSequential() throws Exception{
+    final EntityRecognizer recognizer = recognizer();
+    final String [] texts = new String[8];
+    final String [] expected = new String[texts.length];
+    for(int k = 0; k < texts.length; k++){
+      texts[k] = document(k, 40);
+      expected[k] = EntityWriterReaderTest.format(recognizer.recognizeEntities(texts[k]));
+    }
+
+    // every thread recognizes every text several times, borrowing taggers from the pool
+    final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+    List<Thread> threads = new ArrayList<Thread>();
+    for(int t = 0; t < 4; t++){
+      final int offset = t;
+      Thread thread = new Thread(new Runnable(){
+        public void run(){
+          try{
+            for(int round = 0; round < 3 * texts.length; round++){
+              int k = (round + offset) % texts.length;
+              String actual = EntityWriterReaderTest.format(recognizer.recognizeEntities(texts[k]));
+              if(!actual.equals(expected[k]))
+                failures.add("text " + k + ":\n" + actual);
+            }
+          }
+          catch(RuntimeException e){
+            failures.add(e.toString());
+          }
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+    for(Thread thread : threads)
+      thread.join();
+
+    assertTrue(failures.toString(), failures.isEmpty());
+  }
+
+  @Test
+  public void testPosTaggersAreBounded() throws Exception{
+    final EntityRecognizer recognizer = recognizer();
+    recognizer.setLazyPosTagging(false);
+    final String text = document(3, 30);
+    final String expected = EntityWriterReaderTest.format(recognizer.recognizeEntities(text));
+
+    int max = EntityRecognizer.getMaxPosTaggers();
+    EntityRecognizer.setMaxPosTaggers(2);
+    try{
+      assertTrue(PosTagger.getPool().size() <= 2);
+      // more threads than taggers: the others wait for a tagger instead of loading one
+      final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+      List<Thread> threads = new ArrayList<Thread>();
+      for(int t = 0; t < 6; t++){
+        Thread thread = new Thread(new Runnable(){
+          public void run(){
+            for(int round = 0; round < 5; round++){
+              String actual = EntityWriterReaderTest.format(recognizer.recognizeEntities(text));
+              if(!actual.equals(expected))
+                failures.add(actual);
+              if(PosTagger.getPool().size() > 2)
+                failures.add(PosTagger.getPool().size() + " taggers");
+            }
+          }
+        });
+        thread.start();
+        threads.add(thread);
+      }
+      for(Thread thread : threads)
+        thread.join();
+
+      assertTrue(failures.toString(), failures.isEmpty());
+      assertTrue(PosTagger.getPool().size() <= 2);
+    }
+    finally{
+      EntityRecognizer.setMaxPosTaggers(max);
+    }
+  }
+
+  @Test
+  public void testStagedPipelineMatchesSequential() throws Exception{
+    EntityRecognizer recognizer = recognizer();
+    StringBuilder expected = new StringBuilder();
+    for(int d = 0; d < 12; d++){
+      String text = document(d, d % 4 * 5);
+      File file = File.createTempFile("document", ".txt");
+      files.add(file);
+      Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+      out.write(text);
+      out.close();
+      expected.append(EntityWriterReaderTest.format(recognizer.recognizeEntities(text)));
+    }
+
+    File output = File.createTempFile("entities", ".out");
+    files.add(output);
+    StagedPipeline pipeline = new StagedPipeline(recognizer, new DocumentLoader("UTF-8", 1 << 20));
+    pipeline.setRecognizeThreads(4);
+    pipeline.setReadQueueSize(1);
+    pipeline.setWriteQueueSize(1);
+    EntityWriter writer = EntityWriter.open(output, EntityWriter.FORMAT_TEXT, "UTF-8", 0);
+    try{
+      assertEquals(files.size() - 1, pipeline.run(files.subList(0, files.size() - 1).iterator(), writer));
+    }
+    finally{
+      writer.close();
+    }
+
+    assertEquals(expected.toString(), EntityWriterReaderTest.format(EntityReader.readAll(output, "UTF-8")));
+  }
+}
@@ -0,0 +1,122 @@
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Round trips of EntityWriter and EntityReader in both formats.
+ *
+ * @author xuke
+ *
+ */
+public class EntityWriterReaderTest {
+  private File file;
+
+  @Before
+  public void setUp() throws IOException{
+    file = File.createTempFile("entities", ".out");
+  }
+
+  @After
+  public void tearDown(){
+    file.delete();
+  }
+
+  static MyAnnotation entity(String sentenceID, int begin, int end, String name){
+    MyAnnotation ann = new MyAnnotation();
+    ann.setSentenceID(sentenceID);
+    ann.setBegin(begin);
+    ann.setEnd(end);
+    ann.setName(name);
+    return ann;
+  }
+
+  static String format(List<MyAnnotation> entities){
+    StringBuilder text = new StringBuilder();
+    for(MyAnnotation ann : entities)
+      text.append(ann.getSentenceID()).append('|').append(ann.getBegin()).append(' ').append(ann.getEnd())
+          .append('|').append(ann.getName()).append('\n');
+    return text.toString();
+  }
+
+  private List<MyAnnotation> sample(){
+    List<MyAnnotation> entities = new ArrayList<MyAnnotation>();
+    entities.add(entity("P00001606T0076", 14, 33, "alkaline phosphatases"));
+    entities.add(entity("P00001606T0076", 37, 61, "5-nucleotidase"));
+    entities.add(entity("P00001606T0076", 70, 73, "BRCA1"));
+    entities.add(entity("P00001606T0077", 0, 4, "BRCA1"));
+    entities.add(entity("P00001606T0078", 200000, 200012, "\u03b1-globin"));
+    entities.add(entity("P00001606T0077", 9, 9, "p53"));
+    return entities;
+  }
+
+  private void write(String format, List<MyAnnotation> entities) throws IOException{
+    EntityWriter writer = EntityWriter.open(file, format, "UTF-8", 2);
+    for(MyAnnotation ann : entities)
+      writer.write(ann.getSentenceID(), ann.getBegin(), ann.getEnd(), ann.getName());
+    writer.close();
+  }
+
+  @Test
+  public void testBinaryRoundTrip() throws IOException{
+    write(EntityWriter.FORMAT_BINARY, sample());
+    assertEquals(format(sample()), format(EntityReader.readAll(file, "UTF-8")));
+  }
+
+  @Test
+  public void testTextRoundTrip() throws IOException{
+    write(EntityWriter.FORMAT_TEXT, sample());
+    assertEquals(format(sample()), format(EntityReader.readAll(file, "UTF-8")));
+  }
+
+  @Test
+  public void testBinaryIsSmallerThanText() throws IOException{
+    List<MyAnnotation> entities = new ArrayList<MyAnnotation>();
+    for(int k = 0; k < 1000; k++)
+      entities.add(entity("P0000" + (k / 10), k, k + 5, "BRCA" + (k % 7)));
+
+    write(EntityWriter.FORMAT_TEXT, entities);
+    long textSize = file.length();
+    write(EntityWriter.FORMAT_BINARY, entities);
+    assertTrue(file.length() < textSize);
+    assertEquals(format(entities), format(EntityReader.readAll(file, "UTF-8")));
+  }
+
+  @Test
+  public void testTextStartingWithMagicIsReadAsText() throws IOException{
+    List<MyAnnotation> entities = new ArrayList<MyAnnotation>();
+    entities.add(entity("KEXEKEXE", 0, 3, "TNF"));
+    entities.add(entity("KEXE0001", 4, 8, "p53"));
+    write(EntityWriter.FORMAT_TEXT, entities);
+    assertEquals(format(entities), format(EntityReader.readAll(file, "UTF-8")));
+  }
+
+  @Test
+  public void testEmptyFiles() throws IOException{
+    write(EntityWriter.FORMAT_TEXT, new ArrayList<MyAnnotation>());
+    assertTrue(EntityReader.readAll(file, "UTF-8").isEmpty());
+    write(EntityWriter.FORMAT_BINARY, new ArrayList<MyAnnotation>());
+    assertTrue(EntityReader.readAll(file, "UTF-8").isEmpty());
+  }
+
+  @Test
+  public void testTruncatedBinaryFileFails() throws IOException{
+    write(EntityWriter.FORMAT_BINARY, sample());
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    raf.setLength(raf.length() - 3);
+    raf.close();
+
+    try{
+      EntityReader.readAll(file, "UTF-8");
+      fail("a truncated file must not be read silently");
+    }
+    catch(IOException e){
+      // expected
+    }
+  }
+}
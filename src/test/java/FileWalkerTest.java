@@ -0,0 +1,136 @@
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The files FileWalker returns from a small directory tree, and its estimate of their number.
+ *
+ * @author xuke
+ *
+ */
+public class FileWalkerTest {
+  private File root;
+
+  @Before
+  public void setUp() throws IOException{
+    root = File.createTempFile("walk", ".dir");
+    root.delete();
+    for(String path : new String [] {"a.txt", "b.in", ".hidden.txt", ".hdir/c.txt", "sub/d.txt", "sub/e.log",
+        "sub/deep/f.txt", "2012/g.in", "2012/x/h.in"})
+      touch(path);
+  }
+
+  @After
+  public void tearDown(){
+    delete(root);
+  }
+
+  private void touch(String path) throws IOException{
+    File file = new File(root, path);
+    file.getParentFile().mkdirs();
+    new FileOutputStream(file).close();
+  }
+
+  private static void delete(File file){
+    File [] children = file.listFiles();
+    if(children != null)
+      for(File child : children)
+        delete(child);
+    file.delete();
+  }
+
+  /*
+   * the paths, relative to root, of the files walker returns.
+   */
+  private Set<String> walk(FileWalker walker) throws IOException{
+    Set<String> paths = new HashSet<String>();
+    while(walker.hasNext()){
+      String path = root.toPath().relativize(walker.next().toPath()).toString();
+      assertTrue("returned twice: " + path, paths.add(path.replace(File.separatorChar, '/')));
+    }
+    walker.close();
+    return paths;
+  }
+
+  private Set<String> walk(boolean recursive, boolean skipHidden, String [] includes, String [] excludes) 
+      throws IOException{
+    return walk(new FileWalker(root, recursive, skipHidden, includes, excludes));
+  }
+
+  private static Set<String> set(String... paths){
+    return new HashSet<String>(Arrays.asList(paths));
+  }
+
+  @Test
+  public void testTopDirectoryOnly() throws IOException{
+    assertEquals(set("a.txt", "b.in"), walk(false, true, null, null));
+    assertEquals(set("a.txt", "b.in", ".hidden.txt"), walk(false, false, null, null));
+  }
+
+  @Test
+  public void testHiddenFilesAndDirectoriesAreSkipped() throws IOException{
+    assertEquals(set("a.txt", "b.in", "sub/d.txt", "sub/e.log", "sub/deep/f.txt", "2012/g.in", "2012/x/h.in"), 
+        walk(true, true, null, null));
+    assertEquals(9, walk(true, false, null, null).size());
+  }
+
+  @Test
+  public void testIncludeNamePattern() throws IOException{
+    assertEquals(set("a.txt", "sub/d.txt", "sub/deep/f.txt"), walk(true, true, new String [] {"*.txt"}, null));
+    assertEquals(set("a.txt", ".hidden.txt", ".hdir/c.txt", "sub/d.txt", "sub/deep/f.txt"), 
+        walk(true, false, new String [] {"*.txt"}, null));
+  }
+
+  @Test
+  public void testIncludePathPattern() throws IOException{
+    // '**' crosses directories, '*' does not
+    assertEquals(set("2012/g.in", "2012/x/h.in"), walk(true, true, new String [] {"2012/**.in"}, null));
+    assertEquals(set("2012/g.in"), walk(true, true, new String [] {"2012/*.in"}, null));
+  }
+
+  @Test
+  public void testExcludesWinOverIncludes() throws IOException{
+    assertEquals(set("a.txt", "b.in", "2012/g.in", "2012/x/h.in"), 
+        walk(true, true, null, new String [] {"sub/**"}));
+    assertEquals(set("a.txt"), walk(true, true, new String [] {"*.txt", "*.in"}, new String [] {"sub/**", "*.in"}));
+    // blank patterns are ignored
+    assertEquals(set("a.txt", "b.in"), walk(false, true, new String [] {" "}, new String [] {""}));
+  }
+
+  @Test
+  public void testSingleFileRoot() throws IOException{
+    File file = new File(root, "a.txt");
+    FileWalker walker = new FileWalker(file, true, true, new String [] {"*.in"}, null);
+    assertEquals(1, walker.estimateTotal());
+    assertTrue(walker.hasNext());
+    assertEquals(file, walker.next());
+    assertFalse(walker.hasNext());
+  }
+
+  @Test
+  public void testEstimateTotal() throws IOException{
+    delete(root);
+    // a root holding only directories, of two files each
+    for(int d = 0; d < 4; d++){
+      touch("d" + d + "/1.txt");
+      touch("d" + d + "/2.txt");
+    }
+
+    FileWalker walker = new FileWalker(root, true, true, null, null);
+    assertEquals(0, walker.estimateTotal());
+    walker.next();
+    walker.next();
+    // 2 files found with 1 directory (the root) read, so each of the 3 left is taken to hold 2
+    assertEquals(2 + 3 * 2, walker.estimateTotal());
+
+    assertEquals(6, walk(walker).size());
+    assertEquals(8, walker.estimateTotal());
+  }
+}
@@ -0,0 +1,91 @@
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.junit.Test;
+
+/**
+ * The recognizers GeneNameAnnotator shares between its replicas.
+ *
+ * @author xuke
+ *
+ */
+public class GeneNameAnnotatorTest {
+  @Test
+  public void testReplicasShareRecognizerOfSameSettings() throws IOException{
+    DictionarySnapshot dic = DictionarySnapshotTest.testSnapshot();
+    EntityRecognizer a = GeneNameAnnotator.sharedRecognizer(dic, true, 1000, 50, 0);
+    EntityRecognizer b = GeneNameAnnotator.sharedRecognizer(dic, true, 1000, 50, 0);
+    assertSame(a, b);
+    assertEquals(50, a.getLineCache().getCapacity());
+  }
+
+  @Test
+  public void testSettingsOfOneReplicaDoNotLeakIntoAnother() throws IOException{
+    DictionarySnapshot dic = DictionarySnapshotTest.testSnapshot();
+    EntityRecognizer cached = GeneNameAnnotator.sharedRecognizer(dic, false, null, 50, 100);
+    EntityRecognizer plain = GeneNameAnnotator.sharedRecognizer(dic, null, null, null, null);
+    assertNotSame(cached, plain);
+    assertSame(plain, GeneNameAnnotator.sharedRecognizer(dic));
+
+    assertFalse(cached.isLazyPosTagging());
+    assertEquals(50, cached.getLineCache().getCapacity());
+    assertEquals(100, cached.getParallelChunkLines());
+    assertTrue(plain.isLazyPosTagging());
+    assertEquals(0, plain.getLineCache().getCapacity());
+    assertEquals(0, plain.getParallelChunkLines());
+  }
+
+  private static String resultVersion(DictionarySnapshot dic, EntityRecognizer recognizer){
+    return GeneNameAnnotator.resultVersion(dic, recognizer);
+  }
+
+  @Test
+  public void testResultVersionDependsOnLineCache() throws IOException{
+    DictionarySnapshot dic = DictionarySnapshotTest.testSnapshot();
+    String plain = resultVersion(dic, GeneNameAnnotator.sharedRecognizer(dic, null, null, 0, null));
+    String cached = resultVersion(dic, GeneNameAnnotator.sharedRecognizer(dic, null, null, 50, null));
+    assertFalse(plain.equals(cached));
+    assertTrue(plain.contains("recognizer=" + EntityRecognizer.VERSION));
+    // settings that do not change the entities share the cached results
+    assertEquals(plain, resultVersion(dic, GeneNameAnnotator.sharedRecognizer(dic, false, 10, 0, 5)));
+  }
+
+  @Test
+  public void testFailedDocumentIsNotCached() throws Exception{
+    File dir = File.createTempFile("results", ".dir");
+    dir.delete();
+    try{
+      ResultCache cache = new ResultCache(dir, "test");
+      String text = EntityRecognizerTest.document(3, 4);
+      try{
+        // without dictionaries every line fails
+        GeneNameAnnotator.recognize(new EntityRecognizer(), cache, text, Metrics.get());
+        fail("a failed recognition must fail the document");
+      }
+      catch(AnalysisEngineProcessException e){
+        // expected
+      }
+      assertNull(cache.get(cache.key(text)));
+
+      ArrayList<MyAnnotation> entities = 
+          GeneNameAnnotator.recognize(EntityRecognizerTest.recognizer(), cache, text, Metrics.get());
+      assertFalse(entities.isEmpty());
+      assertEquals(entities.size(), cache.get(cache.key(text)).size());
+    }
+    finally{
+      delete(dir);
+    }
+  }
+
+  private static void delete(File file){
+    File [] children = file.listFiles();
+    if(children != null)
+      for(File child : children)
+        delete(child);
+    file.delete();
+  }
+}
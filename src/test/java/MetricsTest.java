@@ -0,0 +1,139 @@
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * The counters, latency histograms and JSON of Metrics, on instances of their own rather than the one
+ * of the JVM.
+ *
+ * @author xuke
+ *
+ */
+public class MetricsTest {
+  @Test
+  public void testCounters(){
+    Metrics metrics = new Metrics();
+    assertEquals(0, metrics.getCounter(Metrics.DOCUMENTS));
+    metrics.add(Metrics.DOCUMENTS, 2);
+    metrics.add(Metrics.DOCUMENTS, 3);
+    metrics.set(Metrics.STEM_CACHE_HITS, 7);
+    metrics.set(Metrics.STEM_CACHE_HITS, 4);
+    assertEquals(5, metrics.getCounter(Metrics.DOCUMENTS));
+    assertEquals(4, metrics.getCounter(Metrics.STEM_CACHE_HITS));
+    // sorted by name
+    assertEquals(Arrays.asList(Metrics.DOCUMENTS, Metrics.STEM_CACHE_HITS), 
+        new ArrayList<String>(metrics.getCounters().keySet()));
+
+    metrics.reset();
+    assertTrue(metrics.getCounters().isEmpty());
+    assertEquals(0, metrics.getCounter(Metrics.DOCUMENTS));
+  }
+
+  @Test
+  public void testConcurrentAddsAreNotLost() throws InterruptedException{
+    final Metrics metrics = new Metrics();
+    List<Thread> threads = new ArrayList<Thread>();
+    for(int t = 0; t < 8; t++){
+      Thread thread = new Thread(new Runnable(){
+        public void run(){
+          for(int k = 0; k < 10000; k++){
+            metrics.add(Metrics.LINES, 1);
+            metrics.record(Metrics.MATCH, k);
+          }
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+    for(Thread thread : threads)
+      thread.join();
+    assertEquals(80000, metrics.getCounter(Metrics.LINES));
+    assertTrue(metrics.getJson().contains("\"" + Metrics.MATCH + "\": {\"count\": 80000,"));
+  }
+
+  /*
+   * the estimated median of a histogram holding nanos and a larger maximum.
+   */
+  private static double median(long nanos){
+    LatencyHistogram h = new LatencyHistogram();
+    h.record(nanos);
+    h.record(1L << 40);
+    return h.percentile(0.5);
+  }
+
+  @Test
+  public void testHistogramBucketBounds(){
+    // a bucket per power of two, [2^b, 2^(b+1)), reported by its upper end
+    assertEquals(2.0, median(0), 0);
+    assertEquals(2.0, median(1), 0);
+    assertEquals(4.0, median(2), 0);
+    assertEquals(4.0, median(3), 0);
+    assertEquals(1024.0, median(1023), 0);
+    assertEquals(2048.0, median(1024), 0);
+    assertEquals(2048.0, median(2047), 0);
+    // negative durations (a clock going back) count as 0
+    assertEquals(2.0, median(-5), 0);
+  }
+
+  @Test
+  public void testHistogramPercentilesAndMaximum(){
+    LatencyHistogram h = new LatencyHistogram();
+    assertEquals(0.0, h.percentile(0.5), 0);
+    assertEquals(0.0, h.mean(), 0);
+
+    for(long nanos : new long [] {3, 5, 1000, 1500})
+      h.record(nanos);
+    assertEquals(4, h.count());
+    assertEquals(2508, h.sum());
+    assertEquals(627.0, h.mean(), 0);
+    assertEquals(1500, h.max());
+    assertEquals(4.0, h.percentile(0.25), 0);
+    assertEquals(8.0, h.percentile(0.5), 0);
+    assertEquals(1024.0, h.percentile(0.75), 0);
+    // the end of the last bucket is beyond the maximum
+    assertEquals(1500.0, h.percentile(0.99), 0);
+  }
+
+  @Test
+  public void testJson() throws IOException{
+    Metrics metrics = new Metrics();
+    assertEquals("{\n  \"counters\": {\n  },\n  \"latencies\": {\n  }\n}\n", metrics.getJson());
+
+    metrics.add(Metrics.TOKENS, 12);
+    metrics.add(Metrics.DOCUMENTS, 1);
+    metrics.record(Metrics.READ, 2000000);
+    metrics.record(Metrics.ANNOTATE, 500000);
+    metrics.record(Metrics.ANNOTATE, 1500000);
+    String json = "{\n"
+        + "  \"counters\": {\n"
+        + "    \"documents\": 1,\n"
+        + "    \"tokens\": 12\n"
+        + "  },\n"
+        + "  \"latencies\": {\n"
+        + "    \"annotate\": {\"count\": 2, \"totalMillis\": 2.000, \"meanMillis\": 1.000, \"p50Millis\": 0.524,"
+        + " \"p90Millis\": 1.500, \"p99Millis\": 1.500, \"maxMillis\": 1.500},\n"
+        + "    \"read\": {\"count\": 1, \"totalMillis\": 2.000, \"meanMillis\": 2.000, \"p50Millis\": 2.000,"
+        + " \"p90Millis\": 2.000, \"p99Millis\": 2.000, \"maxMillis\": 2.000}\n"
+        + "  }\n"
+        + "}\n";
+    assertEquals(json, metrics.getJson());
+
+    File file = File.createTempFile("metrics", ".json");
+    try{
+      metrics.writeJson(file);
+      byte [] bytes = new byte[(int) file.length()];
+      DataInputStream in = new DataInputStream(new FileInputStream(file));
+      in.readFully(bytes);
+      in.close();
+      assertEquals(json, new String(bytes, "UTF-8"));
+    }
+    finally{
+      file.delete();
+    }
+  }
+}
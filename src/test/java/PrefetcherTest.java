@@ -0,0 +1,150 @@
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * The read-ahead of FileCollectionReader: how many reads the Prefetcher starts, and the failures it
+ * reports. Files are read by a loader whose reads wait until the test lets them complete.
+ *
+ * @author xuke
+ *
+ */
+public class PrefetcherTest {
+  private final GatedLoader loader = new GatedLoader();
+  private Prefetcher prefetcher;
+
+  @After
+  public void tearDown(){
+    loader.gate.release(1000);
+    if(prefetcher != null)
+      prefetcher.close();
+  }
+
+  private static List<File> files(int n){
+    List<File> files = new ArrayList<File>();
+    for(int k = 0; k < n; k++)
+      files.add(new File("doc" + k + ".txt"));
+    return files;
+  }
+
+  /*
+   * wait until expected reads were started, then a little more for any further one.
+   */
+  private void assertStarted(int expected) throws InterruptedException{
+    long deadline = System.currentTimeMillis() + 5000;
+    while(loader.started.get() < expected && System.currentTimeMillis() < deadline)
+      Thread.sleep(5);
+    Thread.sleep(100);
+    assertEquals(expected, loader.started.get());
+  }
+
+  @Test
+  public void testDepthLimitsReadsInFlight() throws Exception{
+    prefetcher = new Prefetcher(files(10).iterator(), loader, 8, 3, Integer.MAX_VALUE, false);
+    // more threads than depth, so only the depth holds the reads back
+    assertStarted(3);
+
+    // taking a document makes room for one more read
+    loader.gate.release(3);
+    assertEquals("doc0.txt", prefetcher.next().getText());
+    assertStarted(4);
+  }
+
+  @Test
+  public void testByteLimitHoldsReadsInFlight() throws Exception{
+    loader.size = 40;
+    prefetcher = new Prefetcher(files(10).iterator(), loader, 8, 10, 100, false);
+    // 2 documents of 40 bytes fit in 100, a third does not
+    assertStarted(2);
+
+    loader.gate.release(2);
+    assertEquals("doc0.txt", prefetcher.next().getText());
+    assertStarted(3);
+  }
+
+  @Test
+  public void testDocumentLargerThanByteLimitIsReadAlone() throws Exception{
+    loader.size = 500;
+    prefetcher = new Prefetcher(files(3).iterator(), loader, 8, 10, 100, false);
+    assertStarted(1);
+
+    loader.gate.release(1);
+    assertEquals("doc0.txt", prefetcher.next().getText());
+    assertStarted(2);
+  }
+
+  @Test
+  public void testReadFailureIsReportedForItsFile() throws Exception{
+    loader.gate.release(1000);
+    loader.failing = "doc1.txt";
+    prefetcher = new Prefetcher(files(3).iterator(), loader, 2, 3, Integer.MAX_VALUE, false);
+
+    assertEquals("doc0.txt", prefetcher.next().getText());
+    assertTrue(prefetcher.hasNext());
+    try{
+      prefetcher.next();
+      fail("the failed read of doc1.txt must reach next()");
+    }
+    catch(IOException e){
+      assertTrue(e.getMessage(), e.getMessage().contains("doc1.txt"));
+    }
+    // the documents after it are still read
+    assertEquals("doc2.txt", prefetcher.next().getText());
+    assertFalse(prefetcher.hasNext());
+  }
+
+  @Test
+  public void testWithoutThreadsReadsOnDemand() throws Exception{
+    loader.gate.release(1000);
+    prefetcher = new Prefetcher(files(3).iterator(), loader, 0, 5, Integer.MAX_VALUE, false);
+    assertEquals(0, loader.started.get());
+
+    List<String> texts = new ArrayList<String>();
+    while(prefetcher.hasNext())
+      texts.add(prefetcher.next().getText());
+    assertEquals(Arrays.asList("doc0.txt", "doc1.txt", "doc2.txt"), texts);
+  }
+}
+
+
+/*
+ * a loader whose documents are their file names, read once gate gives a permit, of size bytes each.
+ */
+class GatedLoader extends DocumentLoader {
+final Semaphore gate = new Semaphore(0);
+final AtomicInteger started = new AtomicInteger();
+volatile long size = 1;
+volatile String failing;
+
+GatedLoader(){
+ super("UTF-8", -1);
+}
+
+public long documentSize(File file){
+ return size;
+}
+
+public String load(File file) throws IOException{
+ started.incrementAndGet();
+ try{
+   if(!gate.tryAcquire(10, TimeUnit.SECONDS))
+     throw new IOException("Timed out reading " + file);
+ }
+ catch(InterruptedException e){
+   throw new IOException("Interrupted reading " + file);
+ }
+ if(file.getName().equals(failing))
+   throw new IOException("Cannot read " + file);
+ return file.getName();
+}
+}
@@ -0,0 +1,127 @@
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * RecognitionService over the test dictionaries (see EntityRecognizerTest): batched requests, in process
+ * and over HTTP, must get the entities the recognizer finds in their own text.
+ *
+ * @author xuke
+ *
+ */
+public class RecognitionServiceTest {
+  private EntityRecognizer recognizer;
+  private RecognitionService service;
+
+  @Before
+  public void setUp() throws IOException{
+    recognizer = EntityRecognizerTest.recognizer();
+    // two workers and a long delay, so that concurrent requests end up in the same batches
+    service = new RecognitionService(recognizer, 2, 64, 50);
+  }
+
+  @After
+  public void tearDown(){
+    service.close();
+  }
+
+  /*
+   * entities in the response format of the service.
+   */
+  private static String format(List<MyAnnotation> entities){
+    StringBuilder text = new StringBuilder();
+    for(MyAnnotation ann : entities)
+      text.append(ann.getSentenceID()).append('|').append(ann.getBegin()).append(' ').append(ann.getEnd())
+          .append('|').append(ann.getName().trim()).append('\n');
+    return text.toString();
+  }
+
+  @Test
+  public void testConcurrentRequestsGetTheirOwnEntities() throws Exception{
+    final String [] texts = new String[12];
+    final String [] expected = new String[texts.length];
+    for(int k = 0; k < texts.length; k++){
+      texts[k] = EntityRecognizerTest.document(k, k % 3 + 1);
+      expected[k] = format(recognizer.recognizeEntities(texts[k]));
+    }
+
+    final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+    List<Thread> threads = new ArrayList<Thread>();
+    for(int t = 0; t < texts.length; t++){
+      final int k = t;
+      Thread thread = new Thread(new Runnable(){
+        public void run(){
+          try{
+            List<MyAnnotation> entities = service.recognize(texts[k]);
+            if(!format(entities).equals(expected[k]))
+              failures.add("text " + k + ":\n" + format(entities));
+            for(int e = 0; e < entities.size(); e++)
+              if(entities.get(e).getID() != e + 1)
+                failures.add("text " + k + " is not numbered from 1");
+          }
+          catch(Exception e){
+            failures.add(e.toString());
+          }
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+    for(Thread thread : threads)
+      thread.join();
+
+    assertTrue(failures.toString(), failures.isEmpty());
+  }
+
+  @Test
+  public void testHttpEndpoint() throws IOException{
+    int port = service.startHttp(0);
+    URL url = new URL("http://localhost:" + port + RecognitionService.CONTEXT);
+    String text = EntityRecognizerTest.document(7, 5);
+
+    HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+    conn.setRequestMethod("POST");
+    conn.setDoOutput(true);
+    OutputStream out = conn.getOutputStream();
+    out.write(text.getBytes("UTF-8"));
+    out.close();
+    assertEquals(200, conn.getResponseCode());
+    assertEquals(format(recognizer.recognizeEntities(text)), read(conn.getInputStream()));
+
+    conn = (HttpURLConnection) url.openConnection();
+    assertEquals(405, conn.getResponseCode());
+    assertEquals("POST", conn.getHeaderField("Allow"));
+  }
+
+  @Test
+  public void testClosedServiceRefusesRequests() throws Exception{
+    service.close();
+    try{
+      service.recognize(EntityRecognizerTest.document(0, 1));
+      fail("a closed service must not queue a request nobody will answer");
+    }
+    catch(IllegalStateException e){
+      // expected
+    }
+  }
+
+  private static String read(InputStream in) throws IOException{
+    Reader reader = new InputStreamReader(in, "UTF-8");
+    StringBuilder text = new StringBuilder();
+    char [] buf = new char[1024];
+    int n;
+    while((n = reader.read(buf)) > 0)
+      text.append(buf, 0, n);
+    reader.close();
+    return text.toString();
+  }
+}